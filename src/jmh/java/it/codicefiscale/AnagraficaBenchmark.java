@@ -0,0 +1,55 @@
+package it.codicefiscale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark della validazione rispetto ai dati anagrafici e della generazione del codice fiscale.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AnagraficaBenchmark {
+
+    private CodiceFiscaleValidator validator;
+    private DatiBenchmark.Anagrafica[] anagrafiche;
+    private int indice;
+
+    @Setup
+    public void setup() {
+        validator = new CodiceFiscaleValidator();
+        anagrafiche = DatiBenchmark.anagrafiche(validator);
+    }
+
+    private DatiBenchmark.Anagrafica prossima() {
+        indice = (indice + 1) & (DatiBenchmark.DIMENSIONE - 1);
+        return anagrafiche[indice];
+    }
+
+    @Benchmark
+    public CodiceFiscaleValidator.Risultato valida() {
+        DatiBenchmark.Anagrafica a = prossima();
+        return validator.valida(a.codiceFiscale, a.nome, a.cognome, a.dataNascita, a.sesso,
+                a.luogoNascita, a.siglaProvincia);
+    }
+
+    @Benchmark
+    public String generaCodiceFiscale() {
+        DatiBenchmark.Anagrafica a = prossima();
+        return validator.generaCodiceFiscale(a.nome, a.cognome, a.dataNascita, a.sesso,
+                a.luogoNascita, a.siglaProvincia);
+    }
+}
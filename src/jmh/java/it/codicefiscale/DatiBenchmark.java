@@ -0,0 +1,138 @@
+package it.codicefiscale;
+
+import java.time.LocalDate;
+import java.util.Random;
+
+/**
+ * Dataset deterministici per i benchmark: generati da un seme fisso,
+ * sono identici a ogni esecuzione e confrontabili tra versioni diverse.
+ */
+public final class DatiBenchmark {
+
+    static final long SEME = 42L;
+
+    // Numero di elementi di ogni dataset (potenza di 2 per l'indice circolare)
+    static final int DIMENSIONE = 1024;
+
+    // Comuni/nazioni usati per generare i dati, con il rispettivo codice belfiore
+    static final String[][] LUOGHI = {
+            {"RM", "ROMA", "H501"},
+            {"MI", "MILANO", "F205"},
+            {"TO", "TORINO", "L219"},
+            {"NA", "NAPOLI", "F839"},
+            {"FI", "FIRENZE", "D612"},
+            {"BO", "BOLOGNA", "A944"},
+            {"EE", "STATI UNITI D'AMERICA", "Z404"}
+    };
+
+    private static final String[] NOMI = {"MARIO", "GIULIA", "LUCA", "FRANCESCA", "ANDREA", "CHIARA", "MATTEO", "SARA"};
+    private static final String[] COGNOMI = {"ROSSI", "BIANCHI", "ESPOSITO", "ROMANO", "COLOMBO", "RICCI", "MARINO", "GRECO"};
+
+    private static final String LETTERE_OMOCODICHE = "LMNPQRSTUV";
+
+    /**
+     * Tipi di codice fiscale generabili, uno per ogni percorso di validaFormato.
+     */
+    public enum Tipo {
+        VALIDO,
+        OMOCODICO,
+        FORMATO_NON_VALIDO,
+        CARATTERE_CONTROLLO_ERRATO,
+        DATA_NON_VALIDA,
+        COMUNE_NON_VALIDO
+    }
+
+    /**
+     * Anagrafica di una persona con il relativo codice fiscale.
+     */
+    static final class Anagrafica {
+        final String nome;
+        final String cognome;
+        final LocalDate dataNascita;
+        final char sesso;
+        final String luogoNascita;
+        final String siglaProvincia;
+        final String codiceFiscale;
+
+        private Anagrafica(String nome, String cognome, LocalDate dataNascita, char sesso,
+                           String luogoNascita, String siglaProvincia, String codiceFiscale) {
+            this.nome = nome;
+            this.cognome = cognome;
+            this.dataNascita = dataNascita;
+            this.sesso = sesso;
+            this.luogoNascita = luogoNascita;
+            this.siglaProvincia = siglaProvincia;
+            this.codiceFiscale = codiceFiscale;
+        }
+    }
+
+    private DatiBenchmark() {
+    }
+
+    /**
+     * Genera un dataset di anagrafiche con codici fiscali validi.
+     */
+    static Anagrafica[] anagrafiche(CodiceFiscaleValidator validator) {
+        Random random = new Random(SEME);
+        Anagrafica[] anagrafiche = new Anagrafica[DIMENSIONE];
+        for (int i = 0; i < anagrafiche.length; i++) {
+            String nome = NOMI[random.nextInt(NOMI.length)];
+            String cognome = COGNOMI[random.nextInt(COGNOMI.length)];
+            LocalDate dataNascita = LocalDate.of(1930 + random.nextInt(70), 1 + random.nextInt(12), 1 + random.nextInt(28));
+            char sesso = random.nextBoolean() ? 'M' : 'F';
+            String[] luogo = LUOGHI[random.nextInt(LUOGHI.length)];
+
+            String cfSenzaControllo = validator.generaCodiceCognome(cognome)
+                    + validator.generaCodiceNome(nome)
+                    + String.format("%02d", dataNascita.getYear() % 100)
+                    + CodiceFiscaleValidator.MESI.charAt(dataNascita.getMonthValue() - 1)
+                    + String.format("%02d", dataNascita.getDayOfMonth() + (sesso == 'F' ? 40 : 0))
+                    + luogo[2];
+            String codiceFiscale = cfSenzaControllo + validator.calcolaCarattereControllo(cfSenzaControllo);
+
+            anagrafiche[i] = new Anagrafica(nome, cognome, dataNascita, sesso, luogo[1], luogo[0], codiceFiscale);
+        }
+        return anagrafiche;
+    }
+
+    /**
+     * Genera un dataset di codici fiscali del tipo indicato.
+     */
+    static String[] codici(CodiceFiscaleValidator validator, Tipo tipo) {
+        Anagrafica[] anagrafiche = anagrafiche(validator);
+        Random random = new Random(SEME + tipo.ordinal());
+        String[] codici = new String[anagrafiche.length];
+        for (int i = 0; i < codici.length; i++) {
+            StringBuilder cf = new StringBuilder(anagrafiche[i].codiceFiscale);
+            switch (tipo) {
+                case OMOCODICO:
+                    // Il carattere di controllo è ricalcolato sulle lettere, come da regola ufficiale
+                    cf.setCharAt(14, LETTERE_OMOCODICHE.charAt(cf.charAt(14) - '0'));
+                    ricalcolaControllo(validator, cf);
+                    break;
+                case FORMATO_NON_VALIDO:
+                    cf.setCharAt(random.nextInt(16), '*');
+                    break;
+                case CARATTERE_CONTROLLO_ERRATO:
+                    cf.setCharAt(15, (char) ('A' + (cf.charAt(15) - 'A' + 1 + random.nextInt(25)) % 26));
+                    break;
+                case DATA_NON_VALIDA:
+                    cf.replace(9, 11, "35");
+                    ricalcolaControllo(validator, cf);
+                    break;
+                case COMUNE_NON_VALIDO:
+                    cf.replace(11, 15, "Z999");
+                    ricalcolaControllo(validator, cf);
+                    break;
+                default:
+                    break;
+            }
+            codici[i] = cf.toString();
+        }
+        return codici;
+    }
+
+    private static void ricalcolaControllo(CodiceFiscaleValidator validator, StringBuilder cf) {
+        cf.setCharAt(15, validator.calcolaCarattereControllo(cf.substring(0, 15)));
+    }
+}
@@ -0,0 +1,69 @@
+package it.codicefiscale;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark di validaFormato per ogni percorso di validazione (valido, omocodico e ogni tipo di errore)
+ * e del calcolo del carattere di controllo e dei suggerimenti di correzione.
+ * Per misurare anche le allocazioni: -Djmh.args="-prof gc".
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ValidatoreBenchmark {
+
+    @Param({"VALIDO", "OMOCODICO", "FORMATO_NON_VALIDO", "CARATTERE_CONTROLLO_ERRATO",
+            "DATA_NON_VALIDA", "COMUNE_NON_VALIDO"})
+    public DatiBenchmark.Tipo tipo;
+
+    private CodiceFiscaleValidator validator;
+    private String[] codici;
+    private String[] senzaControllo;
+    private int indice;
+
+    @Setup
+    public void setup() {
+        validator = new CodiceFiscaleValidator();
+        codici = DatiBenchmark.codici(validator, tipo);
+        senzaControllo = new String[codici.length];
+        for (int i = 0; i < codici.length; i++) {
+            senzaControllo[i] = codici[i].substring(0, 15);
+        }
+    }
+
+    private int prossimo() {
+        indice = (indice + 1) & (DatiBenchmark.DIMENSIONE - 1);
+        return indice;
+    }
+
+    @Benchmark
+    public CodiceFiscaleValidator.Risultato validaFormato() {
+        return validator.validaFormato(codici[prossimo()]);
+    }
+
+    @Benchmark
+    public char calcolaCarattereControllo() {
+        return validator.calcolaCarattereControllo(senzaControllo[prossimo()]);
+    }
+
+    @Benchmark
+    public List<Suggerimento> suggerisciCorrezioni() {
+        return validator.suggerisciCorrezioni(codici[prossimo()], 5);
+    }
+}
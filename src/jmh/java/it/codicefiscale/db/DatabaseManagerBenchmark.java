@@ -0,0 +1,88 @@
+package it.codicefiscale.db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark delle ricerche nel database: con cache calda, con cache vuota
+ * (ogni invocazione esegue la query) e dell'avvio a freddo del DatabaseManager.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DatabaseManagerBenchmark {
+
+    // Stessi comuni dei dataset del validator, più una ricerca senza risultato
+    private static final String[][] LUOGHI = {
+            {"RM", "ROMA"}, {"MI", "MILANO"}, {"TO", "TORINO"}, {"NA", "NAPOLI"},
+            {"FI", "FIRENZE"}, {"BO", "BOLOGNA"}, {"EE", "STATI UNITI D'AMERICA"}, {"XX", "INESISTENTE"}
+    };
+
+    private static final String[] CODICI = {"H501", "F205", "L219", "F839", "D612", "A944", "Z404", "Z999"};
+
+    private DatabaseManager dbManager;
+    private int indice;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        dbManager = DatabaseManager.getInstance();
+        for (String[] luogo : LUOGHI) {
+            dbManager.getCodiceBelfiore(luogo[0], luogo[1]);
+        }
+        dbManager.getRegistroBelfiore();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DatabaseManager.reset();
+    }
+
+    private int prossimo() {
+        indice = (indice + 1) & (LUOGHI.length - 1);
+        return indice;
+    }
+
+    @Benchmark
+    public String getCodiceBelfioreCaldo() throws SQLException {
+        String[] luogo = LUOGHI[prossimo()];
+        return dbManager.getCodiceBelfiore(luogo[0], luogo[1]);
+    }
+
+    @Benchmark
+    public String getCodiceBelfioreFreddo() throws SQLException {
+        String[] luogo = LUOGHI[prossimo()];
+        dbManager.svuotaCache();
+        return dbManager.getCodiceBelfiore(luogo[0], luogo[1]);
+    }
+
+    @Benchmark
+    public boolean isCodiceBelfioreValido() throws SQLException {
+        return dbManager.isCodiceBelfioreValido(CODICI[prossimo()]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 10)
+    public boolean avvioAFreddo() throws SQLException {
+        DatabaseManager.reset();
+        return DatabaseManager.getInstance().isCodiceBelfioreValido("H501");
+    }
+}
@@ -0,0 +1,87 @@
+package it.codicefiscale.db;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Confronto della latenza di una ricerca non in cache: query con UPPER(...) preparata a ogni chiamata
+ * (scansione completa della tabella) e query sulle chiavi normalizzate con statement riutilizzata
+ * (ricerca sull'indice della chiave primaria). Va eseguito dalla radice del progetto.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RicercaComuneBenchmark {
+
+    private static final String DB_URL = "jdbc:sqlite:src/main/resources/database/comuni_nazioni.db";
+
+    private static final String SQL_UPPER = "SELECT codice_belfiore FROM comuni_nazioni " +
+            "WHERE UPPER(sigla_provincia) = ? AND UPPER(denominazione_ita) = ? " +
+            "ORDER BY data_inizio_validita DESC LIMIT 1";
+
+    private static final String[][] LUOGHI = {
+            {"RM", "ROMA"}, {"MI", "MILANO"}, {"TO", "TORINO"}, {"NA", "NAPOLI"},
+            {"FI", "FIRENZE"}, {"BO", "BOLOGNA"}, {"VI", "SOVIZZO"}, {"XX", "INESISTENTE"}
+    };
+
+    private ConnessioneLettura connessione;
+    private int indice;
+
+    @Setup
+    public void setup() throws SQLException {
+        connessione = new ConnessioneLettura(DriverManager.getConnection(DB_URL));
+    }
+
+    @TearDown
+    public void tearDown() {
+        connessione.close();
+    }
+
+    private String[] prossimo() {
+        indice = (indice + 1) & (LUOGHI.length - 1);
+        return LUOGHI[indice];
+    }
+
+    @Benchmark
+    public String upperSenzaRiuso() throws SQLException {
+        String[] luogo = prossimo();
+        Connection connection = connessione.getConnection();
+        try (PreparedStatement stmt = connection.prepareStatement(SQL_UPPER)) {
+            stmt.setString(1, luogo[0]);
+            stmt.setString(2, luogo[1]);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    @Benchmark
+    public String chiaviNormalizzateConRiuso() throws SQLException {
+        String[] luogo = prossimo();
+        PreparedStatement stmt = connessione.prepara(DatabaseManager.SQL_CODICE_BELFIORE);
+        stmt.setString(1, luogo[0]);
+        stmt.setString(2, luogo[1]);
+        try (ResultSet rs = stmt.executeQuery()) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package it.codicefiscale;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Insieme immutabile di codici fiscali fuori dallo heap, per verificare l'appartenenza
+ * a liste molto grandi (es. liste di blocco di decine di milioni di codici) senza un
+ * {@code HashSet<String>} e senza pressione sul garbage collector.
+ *
+ * <p>I codici sono memorizzati come forma canonica di {@link CodiceFiscale} (8 byte per codice),
+ * ordinati e senza duplicati, in un buffer diretto o in un file mappato in memoria;
+ * {@link #contiene(CharSequence)} è una ricerca binaria, quindi O(log n), e non alloca memoria:
+ * un piccolo indice sullo heap individua il blocco di 4 KB che può contenere il codice, quindi ogni
+ * ricerca legge una sola pagina del buffer.
+ * Il confronto è sulla forma canonica: un codice e le sue varianti omocodiche sono lo stesso codice.</p>
+ *
+ * <p>Formato del file ({@link #costruisci(Path, Path)}): intestazione "CFAR", versione e numero di codici,
+ * seguita dai valori big-endian in ordine crescente. Un file mappato è limitato a 2 GB,
+ * circa 268 milioni di codici. Le istanze possono essere condivise tra thread.</p>
+ */
+public final class ArchivioCodici {
+
+    // Intestazione del file: "CFAR", versione del formato e numero di codici
+    private static final int MAGIC = 0x43464152;
+    private static final int VERSIONE = 1;
+    private static final int DIMENSIONE_INTESTAZIONE = 16;
+
+    // Valori per blocco: un blocco occupa 4 KB, una pagina di memoria
+    private static final int BIT_BLOCCO = 9;
+    private static final int VALORI_PER_BLOCCO = 1 << BIT_BLOCCO;
+
+    // Valori canonici ordinati, a partire dalla posizione 0 del buffer
+    private final ByteBuffer valori;
+    private final int dimensione;
+
+    // Primo valore di ogni blocco: la ricerca individua il blocco in questo array (circa 2 KB sullo heap
+    // per milione di codici, quindi sempre in cache) e accede al buffer solo all'interno di una pagina
+    private final long[] guida;
+
+    private ArchivioCodici(ByteBuffer valori, int dimensione) {
+        this.valori = valori;
+        this.dimensione = dimensione;
+        this.guida = new long[(dimensione + VALORI_PER_BLOCCO - 1) >>> BIT_BLOCCO];
+        for (int b = 0; b < guida.length; b++) {
+            guida[b] = valori.getLong((b << BIT_BLOCCO) * Long.BYTES);
+        }
+    }
+
+    /**
+     * Costruisce un archivio in un buffer diretto a partire da una collezione di codici.
+     * I codici non validi (formato, data o carattere di controllo) sono ignorati.
+     *
+     * @param codici I codici fiscali, anche omocodici
+     * @return L'archivio
+     */
+    public static ArchivioCodici di(Collection<? extends CharSequence> codici) {
+        ByteBuffer valori = ByteBuffer.allocateDirect(Math.multiplyExact(codici.size(), Long.BYTES));
+        int numero = 0;
+        for (CharSequence codice : codici) {
+            long valore = CodiceFiscale.codifica(codice, true);
+            if (valore != CodiceFiscale.NON_VALIDO) {
+                valori.putLong(numero++ * Long.BYTES, valore & CodiceFiscale.MASCHERA_CANONICO);
+            }
+        }
+        return new ArchivioCodici(valori, ordinaSenzaDuplicati(valori, numero));
+    }
+
+    /**
+     * Costruisce il file di un archivio da un file di testo con un codice fiscale per riga
+     * (UTF-8; le righe vuote e i codici non validi sono ignorati) e lo apre.
+     * L'ordinamento avviene direttamente nel file mappato in memoria (heapsort, senza memoria
+     * aggiuntiva sullo heap), quindi anche liste molto grandi non richiedono un heap più grande.
+     *
+     * @param fileCodici Il file di testo dei codici
+     * @param fileArchivio Il file dell'archivio da creare (viene sovrascritto)
+     * @return L'archivio aperto
+     * @throws IOException Se si verifica un errore di lettura o scrittura
+     */
+    public static ArchivioCodici costruisci(Path fileCodici, Path fileArchivio) throws IOException {
+        long numero = 0;
+        try (BufferedReader reader = Files.newBufferedReader(fileCodici, StandardCharsets.UTF_8);
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(fileArchivio)))) {
+            output.write(new byte[DIMENSIONE_INTESTAZIONE]);
+            String riga;
+            while ((riga = reader.readLine()) != null) {
+                long valore = CodiceFiscale.codifica(riga, true);
+                if (valore != CodiceFiscale.NON_VALIDO) {
+                    output.writeLong(valore & CodiceFiscale.MASCHERA_CANONICO);
+                    numero++;
+                }
+            }
+        }
+
+        try (FileChannel canale = FileChannel.open(fileArchivio, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = canale.map(FileChannel.MapMode.READ_WRITE, 0, canale.size());
+            buffer.position(DIMENSIONE_INTESTAZIONE);
+            int distinti = ordinaSenzaDuplicati(buffer.slice(), verificaDimensione(numero));
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSIONE);
+            buffer.putLong(8, distinti);
+            buffer.force();
+            canale.truncate(DIMENSIONE_INTESTAZIONE + (long) distinti * Long.BYTES);
+        }
+        return apri(fileArchivio);
+    }
+
+    /**
+     * Apre un archivio creato da {@link #costruisci(Path, Path)}, mappandolo in memoria in sola lettura.
+     *
+     * @param fileArchivio Il file dell'archivio
+     * @return L'archivio
+     * @throws IOException Se il file non è leggibile o non è un archivio valido
+     */
+    public static ArchivioCodici apri(Path fileArchivio) throws IOException {
+        try (FileChannel canale = FileChannel.open(fileArchivio, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size());
+            if (buffer.remaining() < DIMENSIONE_INTESTAZIONE || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Il file non contiene un archivio di codici fiscali: " + fileArchivio);
+            }
+            int versione = buffer.getInt(4);
+            if (versione != VERSIONE) {
+                throw new IOException("Versione dell'archivio non supportata: " + versione);
+            }
+            long numero = buffer.getLong(8);
+            if (numero < 0 || DIMENSIONE_INTESTAZIONE + numero * Long.BYTES != buffer.capacity()) {
+                throw new IOException("Archivio troncato o danneggiato: " + fileArchivio);
+            }
+            buffer.position(DIMENSIONE_INTESTAZIONE);
+            return new ArchivioCodici(buffer.slice(), (int) numero);
+        }
+    }
+
+    /**
+     * Verifica se l'archivio contiene un codice fiscale o una sua variante omocodica.
+     *
+     * @param codiceFiscale Il codice fiscale
+     * @return true se il codice è presente, false se è assente o non valido
+     */
+    public boolean contiene(CharSequence codiceFiscale) {
+        long valore = CodiceFiscale.codifica(codiceFiscale, true);
+        return valore != CodiceFiscale.NON_VALIDO && contieneCanonico(valore & CodiceFiscale.MASCHERA_CANONICO);
+    }
+
+    /**
+     * @param codiceFiscale Il codice fiscale compattato
+     * @return true se la sua forma canonica è presente
+     */
+    public boolean contiene(CodiceFiscale codiceFiscale) {
+        return contieneCanonico(codiceFiscale.getCanonico());
+    }
+
+    /**
+     * @param valore Un valore restituito da {@link CodiceFiscale#toLong()} o {@link CodiceFiscale#codifica(CharSequence)}
+     * @return true se la sua forma canonica è presente
+     */
+    public boolean contiene(long valore) {
+        return valore != CodiceFiscale.NON_VALIDO && contieneCanonico(valore & CodiceFiscale.MASCHERA_CANONICO);
+    }
+
+    /**
+     * @return Il numero di codici distinti nell'archivio
+     */
+    public int dimensione() {
+        return dimensione;
+    }
+
+    private boolean contieneCanonico(long canonico) {
+        // Ultimo blocco il cui primo valore non supera quello cercato
+        int blocco = Arrays.binarySearch(guida, canonico);
+        if (blocco >= 0) {
+            return true;
+        }
+        blocco = -blocco - 2;
+        if (blocco < 0) {
+            return false;
+        }
+
+        int basso = (blocco << BIT_BLOCCO) + 1;
+        int alto = Math.min(basso + VALORI_PER_BLOCCO - 1, dimensione) - 1;
+        while (basso <= alto) {
+            int medio = (basso + alto) >>> 1;
+            long valore = valori.getLong(medio * Long.BYTES);
+            if (valore < canonico) {
+                basso = medio + 1;
+            } else if (valore > canonico) {
+                alto = medio - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int verificaDimensione(long numero) {
+        if (numero > (Integer.MAX_VALUE - DIMENSIONE_INTESTAZIONE) / Long.BYTES) {
+            throw new IllegalArgumentException("Troppi codici per un archivio mappato in memoria: " + numero);
+        }
+        return (int) numero;
+    }
+
+    /**
+     * Ordina in place i primi {@code numero} valori del buffer con heapsort e rimuove i duplicati,
+     * compattando i valori distinti all'inizio.
+     *
+     * @return Il numero di valori distinti
+     */
+    static int ordinaSenzaDuplicati(ByteBuffer buffer, int numero) {
+        for (int i = numero / 2 - 1; i >= 0; i--) {
+            setaccia(buffer, i, numero);
+        }
+        for (int fine = numero - 1; fine > 0; fine--) {
+            long massimo = buffer.getLong(0);
+            buffer.putLong(0, buffer.getLong(fine * Long.BYTES));
+            buffer.putLong(fine * Long.BYTES, massimo);
+            setaccia(buffer, 0, fine);
+        }
+
+        int distinti = Math.min(numero, 1);
+        for (int i = 1; i < numero; i++) {
+            long valore = buffer.getLong(i * Long.BYTES);
+            if (valore != buffer.getLong((distinti - 1) * Long.BYTES)) {
+                buffer.putLong(distinti++ * Long.BYTES, valore);
+            }
+        }
+        return distinti;
+    }
+
+    /**
+     * Fa scendere il valore in posizione {@code i} nel max-heap dei primi {@code numero} valori.
+     */
+    private static void setaccia(ByteBuffer buffer, int i, int numero) {
+        long valore = buffer.getLong(i * Long.BYTES);
+        int figlio;
+        while ((figlio = 2 * i + 1) < numero) {
+            long valoreFiglio = buffer.getLong(figlio * Long.BYTES);
+            if (figlio + 1 < numero) {
+                long destro = buffer.getLong((figlio + 1) * Long.BYTES);
+                if (destro > valoreFiglio) {
+                    figlio++;
+                    valoreFiglio = destro;
+                }
+            }
+            if (valoreFiglio <= valore) {
+                break;
+            }
+            buffer.putLong(i * Long.BYTES, valoreFiglio);
+            i = figlio;
+        }
+        buffer.putLong(i * Long.BYTES, valore);
+    }
+}
@@ -0,0 +1,279 @@
+package it.codicefiscale;
+
+/**
+ * Codice fiscale compattato in un {@code long}, per conservare e confrontare grandi quantità
+ * di codici senza il costo di una {@link String} per codice.
+ *
+ * <p>Layout della codifica ({@link #toLong()}):</p>
+ * <ul>
+ *     <li>bit 0-59: la forma canonica (quella di {@link CodiceFiscaleValidator#normalizzaCF(String)})
+ *     in base mista: 6 lettere di cognome e nome, anno (100), mese (12), giorno e sesso (62),
+ *     lettera (26) e cifre (1000) del codice belfiore. Il carattere di controllo non è memorizzato
+ *     perché si ricava dagli altri. L'ordine numerico coincide con quello alfabetico della forma canonica;</li>
+ *     <li>bit 60-62: il livello di omocodia, da 0 a 7. L'Agenzia delle Entrate sostituisce le cifre
+ *     da destra verso sinistra (posizioni 14, 13, 12, 10, 9, 7, 6), quindi il livello {@code k}
+ *     indica che le ultime {@code k} cifre sono lettere.</li>
+ * </ul>
+ *
+ * <p>Il bit 63 è sempre 0, quindi i valori sono positivi e l'ordine numerico di {@link #toLong()}
+ * coincide con quello alfabetico a parità di livello di omocodia.</p>
+ *
+ * <p>{@link #equals(Object)}, {@link #hashCode()} e {@link #compareTo(CodiceFiscale)} considerano
+ * solo la forma canonica, quindi un codice e le sue varianti omocodiche sono uguali.
+ * Le istanze sono immutabili.</p>
+ */
+public final class CodiceFiscale implements Comparable<CodiceFiscale> {
+
+    // Valore che non corrisponde ad alcun codice fiscale, usato dalle conversioni in array di long
+    public static final long NON_VALIDO = -1L;
+
+    private static final int BIT_CANONICO = 60;
+    static final long MASCHERA_CANONICO = (1L << BIT_CANONICO) - 1;
+    private static final int SPOSTAMENTO_LIVELLO = BIT_CANONICO;
+
+    // Basi dei campi, dal meno significativo
+    private static final int BASE_CIFRE_BELFIORE = 1000;
+    private static final int BASE_LETTERA = 26;
+    private static final int BASE_GIORNO = 62;
+    private static final int BASE_MESE = 12;
+    private static final int BASE_ANNO = 100;
+
+    // Numero di valori canonici distinti: 26^6 * 100 * 12 * 62 * 26 * 1000, circa 2^59
+    private static final long NUMERO_CANONICI = 308_915_776L * BASE_ANNO * BASE_MESE * BASE_GIORNO
+            * BASE_LETTERA * BASE_CIFRE_BELFIORE;
+
+    private static final String LETTERE_OMOCODICHE = "LMNPQRSTUV";
+    private static final int LIVELLO_MASSIMO = VariantiOmocodiche.POSIZIONI.length;
+
+    private final long valore;
+
+    private CodiceFiscale(long valore) {
+        this.valore = valore;
+    }
+
+    /**
+     * Converte un codice fiscale nella forma compatta.
+     * Sono ammessi i codici con formato, data e carattere di controllo corretti
+     * (il codice del comune non viene verificato).
+     *
+     * @param codiceFiscale Il codice fiscale (spazi iniziali/finali e minuscole sono ammessi)
+     * @return Il codice compattato
+     * @throws IllegalArgumentException Se il codice non è valido o le lettere omocodiche
+     *                                  non seguono l'ordine da destra verso sinistra
+     */
+    public static CodiceFiscale di(CharSequence codiceFiscale) {
+        return new CodiceFiscale(codifica(codiceFiscale));
+    }
+
+    /**
+     * Ricostruisce un codice fiscale dalla sua forma compatta.
+     *
+     * @param valore Il valore restituito da {@link #toLong()}
+     * @return Il codice fiscale
+     * @throws IllegalArgumentException Se il valore non è una codifica valida
+     */
+    public static CodiceFiscale daLong(long valore) {
+        if (valore < 0 || (valore & MASCHERA_CANONICO) >= NUMERO_CANONICI) {
+            throw new IllegalArgumentException("Valore non valido: " + Long.toHexString(valore));
+        }
+        return new CodiceFiscale(valore);
+    }
+
+    /**
+     * Converte un codice fiscale nella forma compatta senza creare oggetti.
+     *
+     * @param codiceFiscale Il codice fiscale
+     * @return Il valore compatto
+     * @throws IllegalArgumentException Nei casi descritti in {@link #di(CharSequence)}
+     */
+    public static long codifica(CharSequence codiceFiscale) {
+        long valore = codifica(codiceFiscale, false);
+        if (valore == NON_VALIDO) {
+            throw new IllegalArgumentException("Codice fiscale non valido o con omocodia non standard: " + codiceFiscale);
+        }
+        return valore;
+    }
+
+    /**
+     * Come {@link #codifica(CharSequence)}, ma restituisce {@link #NON_VALIDO} invece di lanciare un'eccezione.
+     *
+     * @param canonicoSeNonStandard Se true, un omocodico con le lettere fuori dall'ordine standard
+     *                              è convertito nella forma canonica invece di essere rifiutato
+     */
+    static long codifica(CharSequence codiceFiscale, boolean canonicoSeNonStandard) {
+        long esito = codiceFiscale == null ? ScannerCodiceFiscale.FORMATO_NON_VALIDO
+                : ScannerCodiceFiscale.scansiona(codiceFiscale);
+        if (ScannerCodiceFiscale.isFormatoNonValido(esito) || ScannerCodiceFiscale.isDataNonValida(esito)
+                || ScannerCodiceFiscale.isControlloErrato(esito)) {
+            return NON_VALIDO;
+        }
+
+        int inizio = 0;
+        while (codiceFiscale.charAt(inizio) <= ' ') {
+            inizio++;
+        }
+
+        // Lettere omocodiche: devono occupare le ultime posizioni numeriche, da destra
+        int livello = 0;
+        while (livello < LIVELLO_MASSIMO
+                && !isCifra(codiceFiscale.charAt(inizio + VariantiOmocodiche.POSIZIONI[livello]))) {
+            livello++;
+        }
+        for (int b = livello; b < LIVELLO_MASSIMO; b++) {
+            if (!isCifra(codiceFiscale.charAt(inizio + VariantiOmocodiche.POSIZIONI[b]))) {
+                if (!canonicoSeNonStandard) {
+                    return NON_VALIDO;
+                }
+                livello = 0;
+                break;
+            }
+        }
+
+        long canonico = 0;
+        for (int i = 0; i < 6; i++) {
+            canonico = canonico * 26 + (maiuscola(codiceFiscale.charAt(inizio + i)) - 'A');
+        }
+        canonico = canonico * BASE_ANNO + cifre(codiceFiscale, inizio + 6, 2);
+        canonico = canonico * BASE_MESE + CodiceFiscaleValidator.MESI.indexOf(maiuscola(codiceFiscale.charAt(inizio + 8)));
+        int giorno = cifre(codiceFiscale, inizio + 9, 2);
+        canonico = canonico * BASE_GIORNO + (giorno > 40 ? giorno - 10 : giorno - 1);
+        canonico = canonico * BASE_LETTERA + (maiuscola(codiceFiscale.charAt(inizio + 11)) - 'A');
+        canonico = canonico * BASE_CIFRE_BELFIORE + cifre(codiceFiscale, inizio + 12, 3);
+
+        return canonico | (long) livello << SPOSTAMENTO_LIVELLO;
+    }
+
+    /**
+     * @return Il valore compatto, da cui {@link #daLong(long)} ricostruisce lo stesso codice
+     */
+    public long toLong() {
+        return valore;
+    }
+
+    /**
+     * @return La forma canonica (senza omocodia) compattata nei 60 bit bassi
+     */
+    public long getCanonico() {
+        return valore & MASCHERA_CANONICO;
+    }
+
+    /**
+     * @return Il numero di cifre sostituite da lettere omocodiche, da 0 a 7
+     */
+    public int getLivelloOmocodia() {
+        return (int) (valore >>> SPOSTAMENTO_LIVELLO) & 0x7;
+    }
+
+    /**
+     * @return Le posizioni sostituite come maschera di bit nell'ordine di {@link VariantiOmocodiche}
+     */
+    public int getMascheraOmocodia() {
+        return (1 << getLivelloOmocodia()) - 1;
+    }
+
+    public boolean isOmocodico() {
+        return getLivelloOmocodia() != 0;
+    }
+
+    /**
+     * @return Il codice fiscale nella forma canonica, con il carattere di controllo ricalcolato
+     */
+    public CodiceFiscale canonico() {
+        return isOmocodico() ? new CodiceFiscale(getCanonico()) : this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof CodiceFiscale && ((CodiceFiscale) o).getCanonico() == getCanonico();
+    }
+
+    @Override
+    public int hashCode() {
+        // Moltiplicazione di Fibonacci: distribuisce anche i bit alti nell'hash a 32 bit
+        return (int) ((getCanonico() * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    @Override
+    public int compareTo(CodiceFiscale altro) {
+        return Long.compare(getCanonico(), altro.getCanonico());
+    }
+
+    /**
+     * @return Il codice fiscale di 16 caratteri, con le eventuali lettere omocodiche
+     */
+    @Override
+    public String toString() {
+        char[] codice = decodifica(valore);
+        codice[15] = controllo(codice);
+        return new String(codice);
+    }
+
+    /**
+     * Ricostruisce i primi 15 caratteri del codice, con le lettere omocodiche del livello indicato.
+     */
+    private static char[] decodifica(long valore) {
+        char[] codice = new char[ScannerCodiceFiscale.LUNGHEZZA];
+        long resto = valore & MASCHERA_CANONICO;
+
+        int cifreBelfiore = (int) (resto % BASE_CIFRE_BELFIORE);
+        resto /= BASE_CIFRE_BELFIORE;
+        codice[11] = (char) ('A' + resto % BASE_LETTERA);
+        resto /= BASE_LETTERA;
+        int giorno = (int) (resto % BASE_GIORNO);
+        resto /= BASE_GIORNO;
+        codice[8] = CodiceFiscaleValidator.MESI.charAt((int) (resto % BASE_MESE));
+        resto /= BASE_MESE;
+        int anno = (int) (resto % BASE_ANNO);
+        resto /= BASE_ANNO;
+        for (int i = 5; i >= 0; i--) {
+            codice[i] = (char) ('A' + resto % 26);
+            resto /= 26;
+        }
+
+        giorno = giorno > 30 ? giorno + 10 : giorno + 1;
+        codice[6] = (char) ('0' + anno / 10);
+        codice[7] = (char) ('0' + anno % 10);
+        codice[9] = (char) ('0' + giorno / 10);
+        codice[10] = (char) ('0' + giorno % 10);
+        codice[12] = (char) ('0' + cifreBelfiore / 100);
+        codice[13] = (char) ('0' + cifreBelfiore / 10 % 10);
+        codice[14] = (char) ('0' + cifreBelfiore % 10);
+
+        int livello = (int) (valore >>> SPOSTAMENTO_LIVELLO) & 0x7;
+        for (int b = 0; b < livello; b++) {
+            int posizione = VariantiOmocodiche.POSIZIONI[b];
+            codice[posizione] = LETTERE_OMOCODICHE.charAt(codice[posizione] - '0');
+        }
+        return codice;
+    }
+
+    /**
+     * Carattere di controllo dei primi 15 caratteri, calcolato sui caratteri effettivi.
+     */
+    private static char controllo(char[] codice) {
+        int somma = 0;
+        for (int i = 0; i < ScannerCodiceFiscale.LUNGHEZZA - 1; i++) {
+            char c = codice[i];
+            int valore = c >= '0' && c <= '9' ? c - '0' : c - 'A';
+            somma += (i & 1) == 0 ? CodiceFiscaleValidator.VALORI_DISPARI[valore] : CodiceFiscaleValidator.VALORI_PARI[valore];
+        }
+        return (char) ('A' + somma % 26);
+    }
+
+    private static int cifre(CharSequence codiceFiscale, int inizio, int numero) {
+        int valore = 0;
+        for (int i = inizio; i < inizio + numero; i++) {
+            char c = maiuscola(codiceFiscale.charAt(i));
+            valore = valore * 10 + (isCifra(c) ? c - '0' : LETTERE_OMOCODICHE.indexOf(c));
+        }
+        return valore;
+    }
+
+    private static boolean isCifra(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static char maiuscola(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+}
@@ -1,15 +1,23 @@
 package it.codicefiscale;
 
 import it.codicefiscale.db.DatabaseManager;
+import it.codicefiscale.db.LuogoNascita;
+import it.codicefiscale.db.RegistroBelfiore;
+import it.codicefiscale.metriche.AscoltatoreMetriche;
+import it.codicefiscale.metriche.Metriche;
 
+import java.nio.CharBuffer;
 import java.sql.SQLException;
+import java.time.DateTimeException;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * Classe per la validazione del codice fiscale italiano,
@@ -17,18 +25,16 @@ import java.util.regex.Pattern;
  */
 public class CodiceFiscaleValidator {
 
-    // Espressione regolare per il formato del codice fiscale (inclusi omocodici)
-    // Le posizioni 6-7, 9-10, 12-13-14-15 possono contenere cifre o lettere omocodiche
-    private static final String REGEX_CODICE_FISCALE = "^[A-Z]{6}[0-9LMNPQRSTUV]{2}[A-Z][0-9LMNPQRSTUV]{2}[A-Z][0-9LMNPQRSTUV]{3}[A-Z]$";
-    private static final Pattern PATTERN_CODICE_FISCALE = Pattern.compile(REGEX_CODICE_FISCALE);
+    // Il formato del codice fiscale (inclusi omocodici) è verificato da ScannerCodiceFiscale:
+    // [A-Z]{6}[0-9LMNPQRSTUV]{2}[A-Z][0-9LMNPQRSTUV]{2}[A-Z][0-9LMNPQRSTUV]{3}[A-Z]
 
     // Le precedenti definizioni di costanti rimangono invariate
-    private static final String MESI = "ABCDEHLMPRST";
+    static final String MESI = "ABCDEHLMPRST";
     private static final String CONSONANTI = "BCDFGHJKLMNPQRSTVWXYZ";
     private static final String VOCALI = "AEIOU";
     private static final String CARATTERI_CONTROLLO = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    private static final int[] VALORI_DISPARI = {1, 0, 5, 7, 9, 13, 15, 17, 19, 21, 2, 4, 18, 20, 11, 3, 6, 8, 12, 14, 16, 10, 22, 25, 24, 23};
-    private static final int[] VALORI_PARI = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25};
+    static final int[] VALORI_DISPARI = {1, 0, 5, 7, 9, 13, 15, 17, 19, 21, 2, 4, 18, 20, 11, 3, 6, 8, 12, 14, 16, 10, 22, 25, 24, 23};
+    static final int[] VALORI_PARI = {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21, 22, 23, 24, 25};
 
     // Tabella di conversione omocodica (lettera -> numero)
     private static final Map<Character, Character> CONVERSIONE_OMOCODICI = new HashMap<>();
@@ -48,6 +54,27 @@ public class CodiceFiscaleValidator {
     // Manager del database
     private final DatabaseManager dbManager;
 
+    // Se true, validaFormato verifica anche che il codice belfiore fosse valido alla data di nascita
+    private final boolean verificaValiditaStorica;
+
+    // Se true, generaCodiceFiscale cerca il comune per similitudine quando la denominazione non è nel database
+    private final boolean ricercaApprossimata;
+
+    // Se true (predefinito), per gli omocodici è accettato anche il carattere di controllo calcolato
+    // sulla forma base con le cifre (vecchia convenzione) oltre a quello ufficiale calcolato sulle lettere
+    private final boolean accettaControlloFormaBase;
+
+    // Registro in memoria dei codici belfiore, richiesto al manager alla prima verifica del comune
+    // (resta null se il manager non lo fornisce)
+    private volatile RegistroBelfiore registroBelfiore;
+    private volatile boolean registroRichiesto;
+
+    // Risultati immutabili condivisi per i codici validi
+    private static final Risultato RISULTATO_VALIDO = new Risultato(true,
+            "Codice fiscale valido", Risultato.TipoErrore.NESSUN_ERRORE, false);
+    private static final Risultato RISULTATO_OMOCODICO_VALIDO = new Risultato(true,
+            "Codice fiscale omocodico valido", Risultato.TipoErrore.NESSUN_ERRORE, true);
+
     /**
      * Risultato della validazione del codice fiscale.
      */
@@ -110,21 +137,144 @@ public class CodiceFiscaleValidator {
     }
 
     /**
-     * Costruttore che inizializza il validator con l'istanza singleton del DatabaseManager.
+     * Costruttore che usa l'istanza singleton del DatabaseManager.
+     * Non accede al database: il registro dei codici belfiore viene caricato alla prima verifica
+     * del comune e il database alla prima ricerca per denominazione, quindi i metodi che non ne hanno
+     * bisogno (es. {@link #normalizzaCF(String)}) non pagano il costo dell'inizializzazione.
+     * Per anticiparla usare {@link #preriscalda()}.
      */
     public CodiceFiscaleValidator() {
+        this(false);
+    }
+
+    /**
+     * Costruttore che usa l'istanza singleton del DatabaseManager.
+     *
+     * @param verificaValiditaStorica Se true, {@link #validaFormato(CharSequence)} e le validazioni batch
+     *                                verificano anche che il codice del comune o nazione fosse valido
+     *                                alla data di nascita, usando gli intervalli di validità del registro
+     *                                in memoria (senza query aggiuntive)
+     */
+    public CodiceFiscaleValidator(boolean verificaValiditaStorica) {
+        this(verificaValiditaStorica, false);
+    }
+
+    /**
+     * Costruttore che usa l'istanza singleton del DatabaseManager.
+     *
+     * @param verificaValiditaStorica Come in {@link #CodiceFiscaleValidator(boolean)}
+     * @param ricercaApprossimata Se true, {@link #valida(String, String, String, LocalDate, char, String, String)}
+     *                            accetta anche denominazioni del luogo di nascita scritte in modo diverso
+     *                            dal database (es. "S. Giovanni Rotondo", "Canicattì", errori di battitura),
+     *                            usando il comune della provincia con la denominazione più simile
+     *                            ({@link DatabaseManager#trovaLuogoSimile(String, String)})
+     */
+    public CodiceFiscaleValidator(boolean verificaValiditaStorica, boolean ricercaApprossimata) {
+        this(verificaValiditaStorica, ricercaApprossimata, true);
+    }
+
+    /**
+     * Costruttore che usa l'istanza singleton del DatabaseManager.
+     *
+     * @param verificaValiditaStorica Come in {@link #CodiceFiscaleValidator(boolean)}
+     * @param ricercaApprossimata Come in {@link #CodiceFiscaleValidator(boolean, boolean)}
+     * @param accettaControlloFormaBase Se true (come negli altri costruttori), un omocodico è valido sia con
+     *                                  il carattere di controllo ufficiale, calcolato sulle lettere, sia con
+     *                                  quello della forma base con le cifre (codici registrati con la vecchia
+     *                                  convenzione). Se false è accettato solo il carattere ufficiale
+     */
+    public CodiceFiscaleValidator(boolean verificaValiditaStorica, boolean ricercaApprossimata,
+                                  boolean accettaControlloFormaBase) {
         try {
             this.dbManager = DatabaseManager.getInstance();
         } catch (SQLException e) {
             throw new RuntimeException("Errore nell'inizializzazione del database: " + e.getMessage(), e);
         }
+        this.verificaValiditaStorica = verificaValiditaStorica;
+        this.ricercaApprossimata = ricercaApprossimata;
+        this.accettaControlloFormaBase = accettaControlloFormaBase;
     }
 
     /**
      * Costruttore per testing.
+     * Se il manager non fornisce un registro dei codici belfiore (es. un mock),
+     * le verifiche del comune sono delegate a {@link DatabaseManager#isCodiceBelfioreValido(String)}.
      */
     public CodiceFiscaleValidator(DatabaseManager dbManager) {
+        this(dbManager, false);
+    }
+
+    /**
+     * Costruttore per testing con la verifica della validità storica del comune.
+     * La verifica richiede il registro dei codici belfiore: se il manager non lo fornisce viene saltata.
+     */
+    public CodiceFiscaleValidator(DatabaseManager dbManager, boolean verificaValiditaStorica) {
+        this(dbManager, verificaValiditaStorica, false);
+    }
+
+    /**
+     * Costruttore per testing con la verifica della validità storica e la ricerca approssimata del comune.
+     */
+    public CodiceFiscaleValidator(DatabaseManager dbManager, boolean verificaValiditaStorica,
+                                  boolean ricercaApprossimata) {
+        this(dbManager, verificaValiditaStorica, ricercaApprossimata, true);
+    }
+
+    /**
+     * Costruttore per testing con tutte le opzioni (vedi {@link #CodiceFiscaleValidator(boolean, boolean, boolean)}).
+     */
+    public CodiceFiscaleValidator(DatabaseManager dbManager, boolean verificaValiditaStorica,
+                                  boolean ricercaApprossimata, boolean accettaControlloFormaBase) {
         this.dbManager = dbManager;
+        this.verificaValiditaStorica = verificaValiditaStorica;
+        this.ricercaApprossimata = ricercaApprossimata;
+        this.accettaControlloFormaBase = accettaControlloFormaBase;
+    }
+
+    /**
+     * Avvia in background il caricamento del registro dei codici belfiore e del database,
+     * così che le prime validazioni non ne paghino la latenza.
+     *
+     * @return Un future completato al termine del preriscaldamento
+     * @see DatabaseManager#preriscalda()
+     */
+    public CompletableFuture<Void> preriscalda() {
+        return dbManager.preriscalda().thenRun(() -> {
+            try {
+                richiediRegistro();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    /**
+     * Genera le 128 varianti omocodiche di un codice fiscale (l'operazione inversa di
+     * {@link #normalizzaCF(String)}), ad esempio per cercare un soggetto in archivi esterni
+     * che potrebbero averlo registrato con una variante diversa.
+     *
+     * @param codiceFiscale Il codice fiscale, in forma base od omocodica
+     * @return Le varianti, a partire dalla forma base con il carattere di controllo ricalcolato
+     * @throws IllegalArgumentException Se il codice non rispetta il formato
+     * @see VariantiOmocodiche
+     */
+    public VariantiOmocodiche variantiOmocodiche(CharSequence codiceFiscale) {
+        return VariantiOmocodiche.di(codiceFiscale);
+    }
+
+    /**
+     * Suggerisce le correzioni di un codice fiscale non valido per un errore di battitura
+     * (un carattere sbagliato o due caratteri adiacenti scambiati), ad esempio quando
+     * {@link #validaFormato(CharSequence)} restituisce CARATTERE_CONTROLLO_ERRATO o COMUNE_NON_VALIDO.
+     * Ogni suggerimento è un codice valido per {@link #validaFormato(CharSequence)}, compresa la data
+     * di nascita e il codice del comune o nazione.
+     *
+     * @param codiceFiscale Il codice fiscale da correggere
+     * @param massimo Il numero massimo di suggerimenti
+     * @return I suggerimenti, dal più probabile; vuota se il codice è già valido o non ha 16 caratteri
+     */
+    public List<Suggerimento> suggerisciCorrezioni(CharSequence codiceFiscale, int massimo) {
+        return SuggeritoreCorrezioni.suggerisci(this, codiceFiscale, massimo);
     }
 
     /**
@@ -187,39 +337,65 @@ public class CodiceFiscaleValidator {
      * @return Risultato della validazione
      */
     public Risultato validaFormato(String codiceFiscale) {
-        // Normalizza e verifica il codice fiscale
+        return validaFormato((CharSequence) codiceFiscale);
+    }
+
+    /**
+     * Valida un codice fiscale verificandone la correttezza formale,
+     * supportando anche i codici fiscali omocodici.
+     * Il codice viene analizzato in una sola passata senza creare stringhe intermedie;
+     * per i codici validi viene restituita un'istanza condivisa di {@link Risultato}.
+     *
+     * @param codiceFiscale Codice fiscale da validare
+     * @return Risultato della validazione
+     */
+    public Risultato validaFormato(CharSequence codiceFiscale) {
+        AscoltatoreMetriche ascoltatore = Metriche.getAscoltatore();
+        if (ascoltatore == null) {
+            return verificaFormato(codiceFiscale);
+        }
+        long inizio = System.nanoTime();
+        Risultato risultato = verificaFormato(codiceFiscale);
+        ascoltatore.validazione(AscoltatoreMetriche.Operazione.VALIDA_FORMATO, risultato.getTipoErrore(),
+                System.nanoTime() - inizio);
+        return risultato;
+    }
+
+    private Risultato verificaFormato(CharSequence codiceFiscale) {
         if (codiceFiscale == null) {
             return new Risultato(false, "Il codice fiscale è null", Risultato.TipoErrore.FORMATO_NON_VALIDO);
         }
 
-        codiceFiscale = codiceFiscale.toUpperCase().trim();
+        long esito = ScannerCodiceFiscale.scansiona(codiceFiscale);
 
         // 1. Verifica il formato (anche con gli omocodici)
-        if (!PATTERN_CODICE_FISCALE.matcher(codiceFiscale).matches()) {
+        if (ScannerCodiceFiscale.isFormatoNonValido(esito)) {
             return new Risultato(false,
                     "Il codice fiscale non rispetta il formato corretto",
                     Risultato.TipoErrore.FORMATO_NON_VALIDO);
         }
 
-        boolean isOmocodico = isOmocodico(codiceFiscale);
-        String cfNormalizzato = isOmocodico ? normalizzaCF(codiceFiscale) : codiceFiscale;
+        boolean isOmocodico = ScannerCodiceFiscale.isOmocodico(esito);
 
         // 2. Verifica della data di nascita
-        try {
-            LocalDate dataNascita = estraiDataNascita(cfNormalizzato);
-        } catch (DateTimeParseException e) {
-            return new Risultato(false,
-                    "La data di nascita nel codice fiscale non è valida: " + e.getMessage(),
-                    Risultato.TipoErrore.DATA_NON_VALIDA,
-                    isOmocodico);
+        if (ScannerCodiceFiscale.isDataNonValida(esito)) {
+            return erroreDataNascita(codiceFiscale, isOmocodico);
         }
 
         // 3. Verifica del codice comune/nazione
-        String codiceBelfiore = cfNormalizzato.substring(11, 15);
+        int codiceBelfiore = ScannerCodiceFiscale.codiceBelfiore(esito);
         try {
-            if (!dbManager.isCodiceBelfioreValido(codiceBelfiore)) {
+            if (!isCodiceBelfioreValido(codiceBelfiore)) {
+                return new Risultato(false,
+                        "Il codice del comune o nazione non è valido: "
+                                + ScannerCodiceFiscale.codiceBelfioreToString(codiceBelfiore),
+                        Risultato.TipoErrore.COMUNE_NON_VALIDO,
+                        isOmocodico);
+            }
+            if (verificaValiditaStorica && !isValidoAllaNascita(esito)) {
                 return new Risultato(false,
-                        "Il codice del comune o nazione non è valido: " + codiceBelfiore,
+                        "Il codice del comune o nazione non era valido alla data di nascita: "
+                                + ScannerCodiceFiscale.codiceBelfioreToString(codiceBelfiore),
                         Risultato.TipoErrore.COMUNE_NON_VALIDO,
                         isOmocodico);
             }
@@ -231,19 +407,282 @@ public class CodiceFiscaleValidator {
         }
 
         // 4. Verifica del carattere di controllo (ultimo controllo)
-        String cfSenzaControllo = cfNormalizzato.substring(0, 15);
-        char carattereControlloAtteso = calcolaCarattereControllo(cfSenzaControllo);
-
-        if (cfNormalizzato.charAt(15) != carattereControlloAtteso) {
+        if (isControlloErrato(esito)) {
             return new Risultato(false,
                     "Il carattere di controllo non è valido",
                     Risultato.TipoErrore.CARATTERE_CONTROLLO_ERRATO,
                     isOmocodico);
         }
 
-        return new Risultato(true,
-                isOmocodico ? "Codice fiscale omocodico valido" : "Codice fiscale valido",
-                Risultato.TipoErrore.NESSUN_ERRORE,
+        return isOmocodico ? RISULTATO_OMOCODICO_VALIDO : RISULTATO_VALIDO;
+    }
+
+    /**
+     * Valida un codice fiscale come {@link #validaFormato(CharSequence)} senza bloccare il thread chiamante,
+     * usando l'executor predefinito (virtual thread su Java 21 e successive).
+     *
+     * @param codiceFiscale Codice fiscale da validare
+     * @return Il risultato della validazione, al completamento
+     */
+    public CompletableFuture<Risultato> validaFormatoAsync(CharSequence codiceFiscale) {
+        return validaFormatoAsync(codiceFiscale, EsecutoreAsincrono.predefinito());
+    }
+
+    /**
+     * Valida un codice fiscale come {@link #validaFormato(CharSequence)} senza bloccare il thread chiamante.
+     * Se i codici belfiore sono verificati sul registro in memoria, già caricato, la validazione non
+     * esegue I/O: viene allora eseguita subito e il future restituito è già completato. Altrimenti viene
+     * eseguita sull'executor indicato, perché la verifica del comune interroga il database.
+     *
+     * @param codiceFiscale Codice fiscale da validare
+     * @param executor L'executor su cui eseguire la validazione quando richiede il database
+     * @return Il risultato della validazione, al completamento
+     */
+    public CompletableFuture<Risultato> validaFormatoAsync(CharSequence codiceFiscale, Executor executor) {
+        if (registroBelfiore != null) {
+            try {
+                return CompletableFuture.completedFuture(validaFormato(codiceFiscale));
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        // La sequenza potrebbe essere modificata dal chiamante prima dell'esecuzione
+        String copia = codiceFiscale != null ? codiceFiscale.toString() : null;
+        return CompletableFuture.supplyAsync(() -> validaFormato(copia), executor);
+    }
+
+    /**
+     * Valida un lotto di codici fiscali scrivendo gli esiti nel buffer colonnare indicato,
+     * senza creare un {@link Risultato} per codice. Il risultato per l'indice {@code i}
+     * corrisponde a quello di {@link #validaFormato(CharSequence)} su {@code codici.get(i)}.
+     *
+     * @param codici I codici fiscali da validare
+     * @param risultati Il buffer in cui scrivere gli esiti (capacità almeno pari al numero di codici)
+     * @return Il buffer dei risultati
+     */
+    public RisultatiBatch validaFormato(List<? extends CharSequence> codici, RisultatiBatch risultati) {
+        int dimensione = codici.size();
+        risultati.inizia(dimensione);
+        for (int i = 0; i < dimensione; i++) {
+            risultati.imposta(i, valutaFormato(codici.get(i)));
+        }
+        return risultati;
+    }
+
+    /**
+     * Valida un codice fiscale con le regole di {@link #validaFormato(CharSequence)}
+     * e lo converte nella forma compatta.
+     * Un omocodico con lettere fuori dall'ordine standard (non rilasciato dall'Agenzia delle Entrate)
+     * viene convertito nella sua forma canonica, come un omocodico con il carattere di controllo
+     * della forma base (accettato se non è stato escluso con {@code accettaControlloFormaBase}).
+     *
+     * @param codiceFiscale Il codice fiscale
+     * @return Il codice compattato, o null se il codice non è valido
+     */
+    public CodiceFiscale codifica(CharSequence codiceFiscale) {
+        long valore = codificaValido(codiceFiscale);
+        return valore == CodiceFiscale.NON_VALIDO ? null : CodiceFiscale.daLong(valore);
+    }
+
+    /**
+     * Valida un lotto di codici fiscali e li converte nella forma compatta senza creare oggetti,
+     * ad esempio per deduplicare o confrontare grandi archivi su array di {@code long}.
+     *
+     * @param codici I codici fiscali
+     * @param destinazione L'array in cui scrivere, per ogni indice, il valore di {@link CodiceFiscale#toLong()}
+     *                     o {@link CodiceFiscale#NON_VALIDO} se il codice non è valido
+     * @return Il numero di codici validi
+     * @see #codifica(CharSequence)
+     */
+    public int codifica(List<? extends CharSequence> codici, long[] destinazione) {
+        int dimensione = codici.size();
+        if (dimensione > destinazione.length) {
+            throw new IllegalArgumentException("Il lotto di " + dimensione
+                    + " codici supera la dimensione dell'array (" + destinazione.length + ")");
+        }
+        int validi = 0;
+        for (int i = 0; i < dimensione; i++) {
+            destinazione[i] = codificaValido(codici.get(i));
+            if (destinazione[i] != CodiceFiscale.NON_VALIDO) {
+                validi++;
+            }
+        }
+        return validi;
+    }
+
+    private long codificaValido(CharSequence codiceFiscale) {
+        if ((valutaFormato(codiceFiscale) & RisultatiBatch.ESITO_TIPO_ERRORE) != Risultato.TipoErrore.NESSUN_ERRORE.ordinal()) {
+            return CodiceFiscale.NON_VALIDO;
+        }
+        long valore = CodiceFiscale.codifica(codiceFiscale, true);
+        if (valore == CodiceFiscale.NON_VALIDO) {
+            // Omocodico con il carattere di controllo della forma base: la forma base con le cifre lo ha corretto
+            valore = CodiceFiscale.codifica(normalizzaCF(codiceFiscale.toString().trim().toUpperCase(Locale.ROOT)), true);
+        }
+        return valore;
+    }
+
+    /**
+     * Valida un array di codici fiscali scrivendo gli esiti nel buffer colonnare indicato.
+     *
+     * @param codici I codici fiscali da validare
+     * @param risultati Il buffer in cui scrivere gli esiti (capacità almeno pari al numero di codici)
+     * @return Il buffer dei risultati
+     */
+    public RisultatiBatch validaFormato(CharSequence[] codici, RisultatiBatch risultati) {
+        risultati.inizia(codici.length);
+        for (int i = 0; i < codici.length; i++) {
+            risultati.imposta(i, valutaFormato(codici[i]));
+        }
+        return risultati;
+    }
+
+    /**
+     * Valida una sequenza di record a larghezza fissa di 16 caratteri (senza separatori),
+     * dalla posizione corrente al limite del buffer. La posizione del buffer non viene modificata.
+     *
+     * @param records I record da validare; i caratteri rimanenti devono essere un multiplo di 16
+     * @param risultati Il buffer in cui scrivere gli esiti (capacità almeno pari al numero di record)
+     * @return Il buffer dei risultati
+     */
+    public RisultatiBatch validaFormato(CharBuffer records, RisultatiBatch risultati) {
+        int lunghezza = records.remaining();
+        if (lunghezza % ScannerCodiceFiscale.LUNGHEZZA != 0) {
+            throw new IllegalArgumentException("La lunghezza dei record (" + lunghezza
+                    + ") non è un multiplo di " + ScannerCodiceFiscale.LUNGHEZZA);
+        }
+        int numeroRecord = lunghezza / ScannerCodiceFiscale.LUNGHEZZA;
+        risultati.inizia(numeroRecord);
+        for (int i = 0; i < numeroRecord; i++) {
+            risultati.imposta(i, valutaRecord(records, i * ScannerCodiceFiscale.LUNGHEZZA));
+        }
+        return risultati;
+    }
+
+    /**
+     * Valida un codice fiscale restituendo l'esito compatto usato da {@link RisultatiBatch}:
+     * ordinale del {@link Risultato.TipoErrore} più l'eventuale flag di omocodia.
+     * Segue gli stessi controlli, nello stesso ordine, di {@link #validaFormato(CharSequence)}.
+     */
+    int valutaFormato(CharSequence codiceFiscale) {
+        if (codiceFiscale == null) {
+            return Risultato.TipoErrore.FORMATO_NON_VALIDO.ordinal();
+        }
+        return valutaEsito(ScannerCodiceFiscale.scansiona(codiceFiscale));
+    }
+
+    /**
+     * Come {@link #valutaFormato(CharSequence)} per 16 caratteri a partire da {@code inizio},
+     * senza eliminazione di spazi.
+     */
+    int valutaRecord(CharSequence records, int inizio) {
+        return valutaEsito(ScannerCodiceFiscale.scansiona(records, inizio));
+    }
+
+    private int valutaEsito(long esito) {
+        if (ScannerCodiceFiscale.isFormatoNonValido(esito)) {
+            return Risultato.TipoErrore.FORMATO_NON_VALIDO.ordinal();
+        }
+
+        int omocodico = ScannerCodiceFiscale.isOmocodico(esito) ? RisultatiBatch.ESITO_OMOCODICO : 0;
+
+        if (ScannerCodiceFiscale.isDataNonValida(esito)) {
+            return Risultato.TipoErrore.DATA_NON_VALIDA.ordinal() | omocodico;
+        }
+
+        try {
+            if (!isCodiceBelfioreValido(ScannerCodiceFiscale.codiceBelfiore(esito))
+                    || verificaValiditaStorica && !isValidoAllaNascita(esito)) {
+                return Risultato.TipoErrore.COMUNE_NON_VALIDO.ordinal() | omocodico;
+            }
+        } catch (SQLException e) {
+            return Risultato.TipoErrore.ERRORE_DATABASE.ordinal() | omocodico;
+        }
+
+        if (isControlloErrato(esito)) {
+            return Risultato.TipoErrore.CARATTERE_CONTROLLO_ERRATO.ordinal() | omocodico;
+        }
+
+        return Risultato.TipoErrore.NESSUN_ERRORE.ordinal() | omocodico;
+    }
+
+    /**
+     * Verifica il carattere di controllo con la regola ufficiale e, salvo esclusione,
+     * con quella della forma base per gli omocodici.
+     */
+    private boolean isControlloErrato(long esito) {
+        return ScannerCodiceFiscale.isControlloErrato(esito)
+                && !(accettaControlloFormaBase && ScannerCodiceFiscale.isControlloFormaBase(esito));
+    }
+
+    /**
+     * @return true se per gli omocodici è accettato anche il carattere di controllo della forma base
+     */
+    boolean isControlloFormaBaseAccettato() {
+        return accettaControlloFormaBase;
+    }
+
+    /**
+     * Verifica un codice belfiore impacchettato, preferendo il registro in memoria.
+     */
+    private boolean isCodiceBelfioreValido(int codiceBelfiore) throws SQLException {
+        RegistroBelfiore registro = registroBelfiore;
+        if (registro == null && !registroRichiesto) {
+            registro = richiediRegistro();
+        }
+        if (registro != null) {
+            return registro.contiene(codiceBelfiore);
+        }
+        return dbManager.isCodiceBelfioreValido(ScannerCodiceFiscale.codiceBelfioreToString(codiceBelfiore));
+    }
+
+    /**
+     * Verifica che il codice belfiore di un esito con data valida fosse valido alla data di nascita.
+     * L'anno a due cifre è ambiguo: il codice è accettato se era valido nella data dell'anno scelto
+     * da {@link #estraiDataNascita(String)} o in quella del secolo successivo, se non è futura.
+     * Va chiamato dopo {@link #isCodiceBelfioreValido(int)}, che richiede il registro; senza registro
+     * la verifica è saltata.
+     */
+    private boolean isValidoAllaNascita(long esito) {
+        RegistroBelfiore registro = registroBelfiore;
+        if (registro == null) {
+            return true;
+        }
+        int codiceBelfiore = ScannerCodiceFiscale.codiceBelfiore(esito);
+        int anno = ScannerCodiceFiscale.annoCompleto(ScannerCodiceFiscale.annoNascita(esito));
+        if (registro.isValido(codiceBelfiore, ScannerCodiceFiscale.epochDayNascita(esito, anno))) {
+            return true;
+        }
+        return anno + 100 <= ScannerCodiceFiscale.annoCorrente()
+                && registro.isValido(codiceBelfiore, ScannerCodiceFiscale.epochDayNascita(esito, anno + 100));
+    }
+
+    /**
+     * Richiede il registro dei codici belfiore al manager, una sola volta.
+     */
+    private synchronized RegistroBelfiore richiediRegistro() throws SQLException {
+        if (!registroRichiesto) {
+            registroBelfiore = dbManager.getRegistroBelfiore();
+            registroRichiesto = true;
+        }
+        return registroBelfiore;
+    }
+
+    /**
+     * Costruisce il risultato per una data di nascita non valida.
+     * Percorso di errore: qui si può allocare per ottenere il messaggio di dettaglio.
+     */
+    private Risultato erroreDataNascita(CharSequence codiceFiscale, boolean isOmocodico) {
+        String dettaglio;
+        try {
+            estraiDataNascita(normalizzaCF(codiceFiscale.toString().toUpperCase(Locale.ROOT).trim()));
+            dettaglio = "data inesistente";
+        } catch (DateTimeException e) {
+            dettaglio = e.getMessage();
+        }
+        return new Risultato(false,
+                "La data di nascita nel codice fiscale non è valida: " + dettaglio,
+                Risultato.TipoErrore.DATA_NON_VALIDA,
                 isOmocodico);
     }
 
@@ -263,9 +702,24 @@ public class CodiceFiscaleValidator {
     public Risultato valida(String codiceFiscale, String nome, String cognome,
                             LocalDate dataNascita, char sesso,
                             String luogoNascita, String siglaProvincia) {
+        AscoltatoreMetriche ascoltatore = Metriche.getAscoltatore();
+        if (ascoltatore == null) {
+            return verificaDatiAnagrafici(codiceFiscale, nome, cognome, dataNascita, sesso, luogoNascita, siglaProvincia);
+        }
+        long inizio = System.nanoTime();
+        Risultato risultato = verificaDatiAnagrafici(codiceFiscale, nome, cognome, dataNascita, sesso,
+                luogoNascita, siglaProvincia);
+        ascoltatore.validazione(AscoltatoreMetriche.Operazione.VALIDA, risultato.getTipoErrore(),
+                System.nanoTime() - inizio);
+        return risultato;
+    }
+
+    private Risultato verificaDatiAnagrafici(String codiceFiscale, String nome, String cognome,
+                                             LocalDate dataNascita, char sesso,
+                                             String luogoNascita, String siglaProvincia) {
 
         // Prima controlla che il codice fiscale sia formalmente valido
-        Risultato risultato = validaFormato(codiceFiscale);
+        Risultato risultato = verificaFormato(codiceFiscale);
         if (!risultato.isFormaleValido()) {
             return risultato;
         }
@@ -283,8 +737,9 @@ public class CodiceFiscaleValidator {
                     isOmocodico);
         }
 
-        // Confronta il codice fiscale normalizzato con quello atteso
-        if (!cfNormalizzato.equals(cfAtteso)) {
+        // Confronta il codice fiscale normalizzato con quello atteso, escluso il carattere di controllo
+        // già verificato: quello di un omocodico è calcolato sulle lettere, non sulla forma normalizzata
+        if (!cfNormalizzato.regionMatches(0, cfAtteso, 0, ScannerCodiceFiscale.LUNGHEZZA - 1)) {
             return new Risultato(false,
                     "Il codice fiscale non corrisponde ai dati anagrafici forniti",
                     Risultato.TipoErrore.DATI_ANAGRAFICI_NON_CORRISPONDENTI,
@@ -297,6 +752,36 @@ public class CodiceFiscaleValidator {
                 isOmocodico);
     }
 
+    /**
+     * Valida un codice fiscale rispetto ai dati anagrafici come
+     * {@link #valida(String, String, String, LocalDate, char, String, String)}, eseguendo la validazione
+     * (che cerca il codice belfiore nel database) sull'executor predefinito.
+     *
+     * @return Il risultato della validazione, al completamento
+     */
+    public CompletableFuture<Risultato> validaAsync(String codiceFiscale, String nome, String cognome,
+                                                    LocalDate dataNascita, char sesso,
+                                                    String luogoNascita, String siglaProvincia) {
+        return validaAsync(codiceFiscale, nome, cognome, dataNascita, sesso, luogoNascita, siglaProvincia,
+                EsecutoreAsincrono.predefinito());
+    }
+
+    /**
+     * Valida un codice fiscale rispetto ai dati anagrafici come
+     * {@link #valida(String, String, String, LocalDate, char, String, String)},
+     * eseguendo la validazione sull'executor indicato.
+     *
+     * @param executor L'executor su cui eseguire la validazione
+     * @return Il risultato della validazione, al completamento
+     */
+    public CompletableFuture<Risultato> validaAsync(String codiceFiscale, String nome, String cognome,
+                                                    LocalDate dataNascita, char sesso,
+                                                    String luogoNascita, String siglaProvincia,
+                                                    Executor executor) {
+        return CompletableFuture.supplyAsync(() -> valida(codiceFiscale, nome, cognome, dataNascita,
+                sesso, luogoNascita, siglaProvincia), executor);
+    }
+
     /**
      * Calcola il carattere di controllo per il codice fiscale.
      *
@@ -386,8 +871,17 @@ public class CodiceFiscaleValidator {
             }
             String giornoStr = String.format("%02d", giornoBase);
 
-            // Codice belfiore (comune o nazione)
-            String codiceBelfiore = dbManager.getCodiceBelfiore(siglaProvincia, luogoNascita);
+            // Codice belfiore (comune o nazione) in vigore alla data di nascita,
+            // altrimenti il più recente (es. data di nascita esterna agli intervalli di validità)
+            String codiceBelfiore = cercaCodiceBelfiore(siglaProvincia, luogoNascita, dataNascita);
+            if (codiceBelfiore == null && ricercaApprossimata) {
+                // Denominazione non presente: si usa il luogo più simile della provincia, se non è ambiguo
+                LuogoNascita luogoSimile = dbManager.trovaLuogoSimile(siglaProvincia, luogoNascita);
+                if (luogoSimile != null) {
+                    codiceBelfiore = cercaCodiceBelfiore(luogoSimile.getSiglaProvincia(),
+                            luogoSimile.getDenominazione(), dataNascita);
+                }
+            }
 
             if (codiceBelfiore == null) {
                 return null; // Comune/nazione non trovato
@@ -406,6 +900,12 @@ public class CodiceFiscaleValidator {
         }
     }
 
+    private String cercaCodiceBelfiore(String siglaProvincia, String denominazione, LocalDate dataNascita)
+            throws SQLException {
+        String codiceBelfiore = dbManager.getCodiceBelfiore(siglaProvincia, denominazione, dataNascita);
+        return codiceBelfiore != null ? codiceBelfiore : dbManager.getCodiceBelfiore(siglaProvincia, denominazione);
+    }
+
     /**
      * Genera il codice per il cognome (prime 3 lettere del CF).
      */
@@ -0,0 +1,74 @@
+package it.codicefiscale;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor predefinito delle validazioni asincrone.
+ *
+ * <p>Sulle JVM che supportano i virtual thread (Java 21 e successive) ogni validazione viene eseguita
+ * su un virtual thread, che si sospende sull'attesa JDBC senza occupare un thread di piattaforma.
+ * Sulle versioni precedenti viene usato un pool di thread daemon che crescono su richiesta.
+ * Il metodo di Java 21 è risolto per riflessione, così il progetto resta compilabile per Java 11.</p>
+ */
+final class EsecutoreAsincrono {
+
+    // Metodo di Java 21 per creare un executor con un virtual thread per task
+    private static final String METODO_VIRTUAL_THREAD = "newVirtualThreadPerTaskExecutor";
+
+    private EsecutoreAsincrono() {
+    }
+
+    /**
+     * @return L'executor condiviso, creato al primo utilizzo
+     */
+    static Executor predefinito() {
+        return Holder.EXECUTOR;
+    }
+
+    /**
+     * @return true se l'executor predefinito usa i virtual thread
+     */
+    static boolean isThreadVirtuali() {
+        return Holder.THREAD_VIRTUALI;
+    }
+
+    private static final class Holder {
+        static final boolean THREAD_VIRTUALI;
+        static final ExecutorService EXECUTOR;
+
+        static {
+            ExecutorService executor = creaConThreadVirtuali();
+            THREAD_VIRTUALI = executor != null;
+            EXECUTOR = executor != null ? executor : Executors.newCachedThreadPool(new FabbricaThread());
+        }
+    }
+
+    private static ExecutorService creaConThreadVirtuali() {
+        try {
+            Method metodo = Executors.class.getMethod(METODO_VIRTUAL_THREAD);
+            return (ExecutorService) metodo.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // JVM precedente a Java 21
+            return null;
+        }
+    }
+
+    /**
+     * Crea thread daemon con nome riconoscibile, per non impedire la terminazione della JVM.
+     */
+    private static final class FabbricaThread implements ThreadFactory {
+        private final AtomicInteger contatore = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "codicefiscale-async-" + contatore.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
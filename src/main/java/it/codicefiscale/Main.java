@@ -1,10 +1,29 @@
 package it.codicefiscale;
 
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
 /**
  * Demo della libreria CodiceFiscaleValidator.
+ *
+ * <p>Senza argomenti esegue la demo; con {@code --csv} valida un file CSV/TSV in streaming:</p>
+ * <pre>
+ * --csv &lt;file&gt; [--output &lt;file&gt;] [--colonna &lt;n&gt;] [--separatore &lt;c|tab&gt;] [--intestazione]
+ * </pre>
+ * Le righe annotate vengono scritte sul file di output (o sullo standard output),
+ * le statistiche sullo standard error.
  */
 public class Main {
     public static void main(String[] args) {
+        if (args.length > 0) {
+            System.exit(validaFile(args));
+        }
+
         // Creare un'istanza del validatore
         CodiceFiscaleValidator validator = new CodiceFiscaleValidator();
 
@@ -26,4 +45,67 @@ public class Main {
         System.out.println("Messaggio: " + risultatoErrato.getMessaggio());
         System.out.println("Tipo errore: " + risultatoErrato.getTipoErrore());
     }
+
+    /**
+     * Valida un file CSV/TSV secondo gli argomenti della riga di comando.
+     *
+     * @return Il codice di uscita del processo
+     */
+    private static int validaFile(String[] args) {
+        Path ingresso = null;
+        Path uscita = null;
+        int colonna = 0;
+        char separatore = ';';
+        boolean intestazione = false;
+        CodiceFiscaleValidator validator = new CodiceFiscaleValidator();
+        ValidatoreCsv validatoreCsv;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--csv":
+                        ingresso = Paths.get(args[++i]);
+                        break;
+                    case "--output":
+                        uscita = Paths.get(args[++i]);
+                        break;
+                    case "--colonna":
+                        colonna = Integer.parseInt(args[++i]);
+                        break;
+                    case "--separatore":
+                        String valore = args[++i];
+                        separatore = "tab".equalsIgnoreCase(valore) || "\\t".equals(valore) ? '\t' : valore.charAt(0);
+                        break;
+                    case "--intestazione":
+                        intestazione = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Argomento sconosciuto: " + args[i]);
+                }
+            }
+            if (ingresso == null) {
+                throw new IllegalArgumentException("Specificare il file da validare con --csv");
+            }
+            // Verifica anche colonna e separatore (es. colonna negativa o separatore uguale alle virgolette)
+            validatoreCsv = new ValidatoreCsv(validator, colonna, separatore, intestazione);
+        } catch (RuntimeException e) {
+            System.err.println("Errore: " + e.getMessage());
+            System.err.println("Uso: --csv <file> [--output <file>] [--colonna <n>] [--separatore <c|tab>] [--intestazione]");
+            return 2;
+        }
+
+        try (FileChannel in = FileChannel.open(ingresso, StandardOpenOption.READ);
+             WritableByteChannel out = uscita != null
+                     ? FileChannel.open(uscita, StandardOpenOption.WRITE,
+                             StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)
+                     : Channels.newChannel(System.out)) {
+            StatisticheValidazione statistiche = validatoreCsv.valida(in, out);
+            System.out.flush();
+            System.err.println(statistiche);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Errore nella validazione del file: " + e.getMessage());
+            return 1;
+        }
+    }
 }
@@ -0,0 +1,279 @@
+package it.codicefiscale;
+
+import it.codicefiscale.CodiceFiscaleValidator.Risultato;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stadio di una pipeline {@link Flow} che riceve codici fiscali e pubblica i {@link Risultato}
+ * di {@link CodiceFiscaleValidator#validaFormato(CharSequence)}, nello stesso ordine dei codici.
+ *
+ * <p>I codici ricevuti vengono raggruppati in lotti validati sull'executor; al più {@code parallelismo}
+ * lotti sono in elaborazione contemporaneamente e gli altri attendono in coda, nell'ordine di arrivo.
+ * Un lotto incompleto viene comunque chiuso dopo l'attesa massima configurata, per limitare la latenza
+ * quando il flusso in ingresso rallenta.</p>
+ *
+ * <p>La contropressione è propagata in entrambe le direzioni: a monte vengono richiesti solo
+ * i codici che possono essere in elaborazione, e nuovi codici vengono richiesti solo dopo che i
+ * risultati del lotto precedente sono stati accettati dai sottoscrittori a valle, che ricevono
+ * i risultati tramite un {@link SubmissionPublisher} con buffer limitato. I sottoscrittori vanno
+ * registrati prima che inizi il flusso in ingresso: i risultati pubblicati senza sottoscrittori
+ * vengono scartati.</p>
+ */
+public class ProcessoreValidazione implements Flow.Processor<CharSequence, Risultato> {
+
+    // Numero predefinito di codici per lotto
+    private static final int LOTTO_PREDEFINITO = 256;
+
+    // Attesa massima predefinita prima di validare un lotto incompleto
+    private static final Duration ATTESA_PREDEFINITA = Duration.ofMillis(10);
+
+    private final CodiceFiscaleValidator validator;
+    private final Executor executor;
+    private final int parallelismo;
+    private final int dimensioneLotto;
+    private final long attesaNanos;
+    private final SubmissionPublisher<Risultato> uscita;
+
+    private final Object lock = new Object();
+    private volatile Flow.Subscription sottoscrizione;
+
+    // Stato del lotto in costruzione, protetto da lock
+    private List<String> lotto;
+    private long generazioneLotto;
+    private boolean terminato;
+
+    // Completamento della pubblicazione dell'ultimo lotto chiuso, protetto da lock
+    private CompletableFuture<Void> emissioni = CompletableFuture.completedFuture(null);
+
+    // Lotti in validazione e lotti chiusi in attesa di un posto libero, protetti da lock
+    private int lottiInElaborazione;
+    private final ArrayDeque<Runnable> lottiInAttesa = new ArrayDeque<>();
+
+    /**
+     * Crea un processore che valida lotti di 256 codici sul pool comune di fork-join,
+     * con parallelismo pari al numero di processori.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     */
+    public ProcessoreValidazione(CodiceFiscaleValidator validator) {
+        this(validator, ForkJoinPool.commonPool(), Runtime.getRuntime().availableProcessors(),
+                LOTTO_PREDEFINITO, ATTESA_PREDEFINITA, Flow.defaultBufferSize());
+    }
+
+    /**
+     * Crea un processore con parametri personalizzati.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     * @param executor L'executor su cui validare i lotti e consegnare i risultati (almeno due thread:
+     *                 la pubblicazione di un lotto può attendere la consegna ai sottoscrittori)
+     * @param parallelismo Numero massimo di lotti in elaborazione contemporaneamente
+     * @param dimensioneLotto Numero di codici per lotto
+     * @param attesaMassima Attesa massima prima di validare un lotto incompleto (zero per attendere
+     *                      sempre il completamento del lotto o la fine del flusso)
+     * @param bufferSottoscrittore Numero massimo di risultati in attesa per ogni sottoscrittore a valle
+     */
+    public ProcessoreValidazione(CodiceFiscaleValidator validator, Executor executor, int parallelismo,
+                                 int dimensioneLotto, Duration attesaMassima, int bufferSottoscrittore) {
+        if (parallelismo < 1) {
+            throw new IllegalArgumentException("Parallelismo non valido: " + parallelismo);
+        }
+        if (dimensioneLotto < 1) {
+            throw new IllegalArgumentException("Dimensione del lotto non valida: " + dimensioneLotto);
+        }
+        if (attesaMassima.isNegative()) {
+            throw new IllegalArgumentException("Attesa massima non valida: " + attesaMassima);
+        }
+        this.validator = validator;
+        this.executor = executor;
+        this.parallelismo = parallelismo;
+        this.dimensioneLotto = dimensioneLotto;
+        this.attesaNanos = attesaMassima.toNanos();
+        this.uscita = new SubmissionPublisher<>(executor, bufferSottoscrittore);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Risultato> subscriber) {
+        uscita.subscribe(subscriber);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Objects.requireNonNull(subscription);
+        synchronized (lock) {
+            if (sottoscrizione != null || terminato) {
+                subscription.cancel();
+                return;
+            }
+            sottoscrizione = subscription;
+        }
+        subscription.request((long) parallelismo * dimensioneLotto);
+    }
+
+    @Override
+    public void onNext(CharSequence codice) {
+        Objects.requireNonNull(codice);
+        synchronized (lock) {
+            if (terminato) {
+                return;
+            }
+            if (lotto == null) {
+                lotto = new ArrayList<>(dimensioneLotto);
+                pianificaAvvio(++generazioneLotto);
+            }
+            // Copia il codice: il chiamante potrebbe riusare la sequenza
+            lotto.add(codice.toString());
+            if (lotto.size() >= dimensioneLotto) {
+                avviaLotto();
+            }
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Objects.requireNonNull(throwable);
+        synchronized (lock) {
+            if (terminato) {
+                return;
+            }
+            terminato = true;
+            // Pubblica i risultati dei codici già ricevuti, poi propaga l'errore
+            if (lotto != null) {
+                avviaLotto();
+            }
+            emissioni.whenComplete((v, e) -> uscita.closeExceptionally(e != null ? causa(e) : throwable));
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (lock) {
+            if (terminato) {
+                return;
+            }
+            terminato = true;
+            if (lotto != null) {
+                avviaLotto();
+            }
+            emissioni.whenComplete((v, e) -> {
+                if (e == null) {
+                    uscita.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * Pianifica la validazione del lotto corrente dopo l'attesa massima, se nel frattempo
+     * non è già stato avviato perché completo.
+     */
+    private void pianificaAvvio(long generazione) {
+        if (attesaNanos == 0) {
+            return;
+        }
+        CompletableFuture.delayedExecutor(attesaNanos, TimeUnit.NANOSECONDS, executor).execute(() -> {
+            synchronized (lock) {
+                if (generazioneLotto == generazione && lotto != null) {
+                    avviaLotto();
+                }
+            }
+        });
+    }
+
+    /**
+     * Chiude il lotto corrente e ne accoda la pubblicazione dopo quella del lotto precedente.
+     * La validazione parte subito se ci sono meno di {@code parallelismo} lotti in elaborazione,
+     * altrimenti quando termina uno di quelli in corso. Va chiamato tenendo lock.
+     */
+    private void avviaLotto() {
+        List<String> codici = lotto;
+        lotto = null;
+        CompletableFuture<Risultato[]> validazione = new CompletableFuture<>();
+        emissioni = emissioni.thenCombineAsync(validazione, this::pubblica, executor);
+        emissioni.exceptionally(e -> {
+            fallisci(causa(e));
+            return null;
+        });
+
+        Runnable avvio = () -> CompletableFuture.supplyAsync(() -> valida(codici), executor)
+                .whenComplete((risultati, e) -> {
+                    liberaPosto();
+                    if (e != null) {
+                        validazione.completeExceptionally(e);
+                    } else {
+                        validazione.complete(risultati);
+                    }
+                });
+        if (lottiInElaborazione < parallelismo) {
+            lottiInElaborazione++;
+            avvio.run();
+        } else {
+            lottiInAttesa.add(avvio);
+        }
+    }
+
+    /**
+     * Al termine della validazione di un lotto avvia il primo lotto in attesa, che ne prende il posto.
+     */
+    private void liberaPosto() {
+        synchronized (lock) {
+            Runnable successivo = lottiInAttesa.poll();
+            if (successivo != null) {
+                successivo.run();
+            } else {
+                lottiInElaborazione--;
+            }
+        }
+    }
+
+    private Risultato[] valida(List<String> codici) {
+        Risultato[] risultati = new Risultato[codici.size()];
+        for (int i = 0; i < risultati.length; i++) {
+            risultati[i] = validator.validaFormato(codici.get(i));
+        }
+        return risultati;
+    }
+
+    /**
+     * Consegna i risultati a valle, attendendo se i buffer dei sottoscrittori sono pieni,
+     * e richiede a monte altrettanti codici.
+     */
+    private Void pubblica(Void precedente, Risultato[] risultati) {
+        for (Risultato risultato : risultati) {
+            uscita.submit(risultato);
+        }
+        sottoscrizione.request(risultati.length);
+        return null;
+    }
+
+    private void fallisci(Throwable causa) {
+        Flow.Subscription daCancellare = null;
+        synchronized (lock) {
+            if (!terminato) {
+                terminato = true;
+                lotto = null;
+                lottiInAttesa.clear();
+                daCancellare = sottoscrizione;
+            }
+        }
+        if (daCancellare != null) {
+            daCancellare.cancel();
+        }
+        uscita.closeExceptionally(causa);
+    }
+
+    private static Throwable causa(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+}
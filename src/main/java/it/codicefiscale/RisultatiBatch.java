@@ -0,0 +1,131 @@
+package it.codicefiscale;
+
+import it.codicefiscale.CodiceFiscaleValidator.Risultato.TipoErrore;
+
+/**
+ * Buffer colonnare per i risultati della validazione di un lotto di codici fiscali.
+ * Al posto di un oggetto {@link CodiceFiscaleValidator.Risultato} per codice, memorizza
+ * gli esiti in array primitivi preallocati che possono essere riutilizzati tra un lotto e l'altro.
+ *
+ * <p>Per ogni indice {@code i} del lotto:</p>
+ * <ul>
+ *     <li>{@code getValidi()[i]} indica se il codice è valido;</li>
+ *     <li>{@code getTipiErrore()[i]} contiene l'ordinale del {@link TipoErrore};</li>
+ *     <li>{@code getOmocodici()[i]} indica se il codice è omocodico.</li>
+ * </ul>
+ *
+ * <p>Le istanze non sono thread-safe: ogni lotto in elaborazione deve usare il proprio buffer,
+ * ma thread diversi possono scrivere indici disgiunti dello stesso buffer.</p>
+ */
+public final class RisultatiBatch {
+
+    // Esito compatto: ordinale del tipo di errore nei bit bassi, flag di omocodia nel bit 7
+    static final int ESITO_OMOCODICO = 0x80;
+    static final int ESITO_TIPO_ERRORE = 0x7F;
+
+    private static final TipoErrore[] TIPI_ERRORE = TipoErrore.values();
+
+    private final boolean[] validi;
+    private final byte[] tipiErrore;
+    private final boolean[] omocodici;
+    private int dimensione;
+
+    /**
+     * Crea un buffer in grado di contenere i risultati di {@code capacita} codici.
+     *
+     * @param capacita Numero massimo di codici per lotto
+     */
+    public RisultatiBatch(int capacita) {
+        if (capacita < 0) {
+            throw new IllegalArgumentException("Capacità non valida: " + capacita);
+        }
+        this.validi = new boolean[capacita];
+        this.tipiErrore = new byte[capacita];
+        this.omocodici = new boolean[capacita];
+    }
+
+    /**
+     * Registra l'esito compatto del codice di indice {@code indice}.
+     */
+    void imposta(int indice, int esito) {
+        int tipoErrore = esito & ESITO_TIPO_ERRORE;
+        validi[indice] = tipoErrore == TipoErrore.NESSUN_ERRORE.ordinal();
+        tipiErrore[indice] = (byte) tipoErrore;
+        omocodici[indice] = (esito & ESITO_OMOCODICO) != 0;
+    }
+
+    /**
+     * Prepara il buffer per un nuovo lotto di {@code dimensione} codici.
+     */
+    void inizia(int dimensione) {
+        if (dimensione > validi.length) {
+            throw new IllegalArgumentException("Il lotto di " + dimensione
+                    + " codici supera la capacità del buffer (" + validi.length + ")");
+        }
+        this.dimensione = dimensione;
+    }
+
+    /**
+     * @return Il numero massimo di codici per lotto
+     */
+    public int getCapacita() {
+        return validi.length;
+    }
+
+    /**
+     * @return Il numero di codici dell'ultimo lotto validato
+     */
+    public int getDimensione() {
+        return dimensione;
+    }
+
+    public boolean isValido(int indice) {
+        return validi[indice];
+    }
+
+    public TipoErrore getTipoErrore(int indice) {
+        return TIPI_ERRORE[tipiErrore[indice]];
+    }
+
+    public boolean isOmocodico(int indice) {
+        return omocodici[indice];
+    }
+
+    /**
+     * @return L'array dei flag di validità (lunghezza pari alla capacità)
+     */
+    public boolean[] getValidi() {
+        return validi;
+    }
+
+    /**
+     * @return L'array degli ordinali di {@link TipoErrore} (lunghezza pari alla capacità)
+     */
+    public byte[] getTipiErrore() {
+        return tipiErrore;
+    }
+
+    /**
+     * @return L'array dei flag di omocodia (lunghezza pari alla capacità)
+     */
+    public boolean[] getOmocodici() {
+        return omocodici;
+    }
+
+    /**
+     * Conta i codici dell'ultimo lotto con un determinato tipo di errore.
+     *
+     * @param tipoErrore Il tipo di errore da contare ({@code NESSUN_ERRORE} per i codici validi)
+     * @return Il numero di codici con quel tipo di errore
+     */
+    public int conta(TipoErrore tipoErrore) {
+        byte ordinale = (byte) tipoErrore.ordinal();
+        int conteggio = 0;
+        for (int i = 0; i < dimensione; i++) {
+            if (tipiErrore[i] == ordinale) {
+                conteggio++;
+            }
+        }
+        return conteggio;
+    }
+}
@@ -0,0 +1,307 @@
+package it.codicefiscale;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.ZoneId;
+
+/**
+ * Scanner a passata singola del codice fiscale.
+ * Verifica in un unico ciclo le classi di carattere delle 16 posizioni, riconosce l'omocodia,
+ * calcola il carattere di controllo e decodifica la data di nascita senza allocare oggetti:
+ * l'esito viene restituito in un singolo {@code long}.
+ *
+ * <p>Layout dell'esito: i 32 bit bassi contengono il codice belfiore normalizzato
+ * (4 caratteri ASCII, uno per byte), i bit 32-35 i flag di errore e di omocodia e, se la data
+ * è valida, i bit 36-51 la data di nascita (anno a due cifre, indice del mese e giorno).
+ * Il bit 52 indica che il carattere di controllo, errato, è quello della forma base di un omocodico.</p>
+ */
+final class ScannerCodiceFiscale {
+
+    static final long FORMATO_NON_VALIDO = 1L << 32;
+    static final long DATA_NON_VALIDA = 1L << 33;
+    static final long CONTROLLO_ERRATO = 1L << 34;
+    static final long OMOCODICO = 1L << 35;
+
+    // Insieme a CONTROLLO_ERRATO: il carattere di controllo dell'omocodico è quello della forma base con le cifre
+    static final long CONTROLLO_FORMA_BASE = 1L << 52;
+
+    private static final long MASCHERA_BELFIORE = 0xFFFFFFFFL;
+
+    // Data di nascita: anno a due cifre (7 bit), indice del mese (4 bit) e giorno senza l'offset del sesso (5 bit)
+    private static final int SPOSTAMENTO_DATA = 36;
+
+    // Lunghezza del codice fiscale
+    static final int LUNGHEZZA = 16;
+
+    // Posizioni (0-based) che contengono cifre o lettere omocodiche
+    private static final boolean[] POSIZIONI_NUMERICHE = new boolean[LUNGHEZZA];
+    static {
+        for (int pos : new int[]{6, 7, 9, 10, 12, 13, 14}) {
+            POSIZIONI_NUMERICHE[pos] = true;
+        }
+    }
+
+    // Tabelle indicizzate per lettera (A=0): cifra omocodica e indice del mese, -1 se non ammesse
+    private static final int[] CIFRE_OMOCODICHE = tabellaLettere("LMNPQRSTUV");
+    private static final int[] INDICI_MESE = tabellaLettere(CodiceFiscaleValidator.MESI);
+
+    // Anno corrente, ricalcolato solo allo scoccare del nuovo anno
+    private static volatile AnnoCorrente annoCorrente = AnnoCorrente.calcola();
+
+    private ScannerCodiceFiscale() {
+    }
+
+    /**
+     * Analizza un codice fiscale ignorando spazi iniziali/finali e maiuscole/minuscole.
+     *
+     * @param cf Il codice fiscale da analizzare (non null)
+     * @return L'esito codificato, da interpretare con i metodi statici di questa classe
+     */
+    static long scansiona(CharSequence cf) {
+        int inizio = 0;
+        int fine = cf.length();
+        while (inizio < fine && cf.charAt(inizio) <= ' ') {
+            inizio++;
+        }
+        while (fine > inizio && cf.charAt(fine - 1) <= ' ') {
+            fine--;
+        }
+        if (fine - inizio != LUNGHEZZA) {
+            return FORMATO_NON_VALIDO;
+        }
+        return scansiona(cf, inizio);
+    }
+
+    /**
+     * Analizza 16 caratteri consecutivi a partire da {@code inizio}, senza eliminare spazi.
+     *
+     * @param cf La sequenza che contiene il codice fiscale
+     * @param inizio Indice del primo carattere del codice
+     * @return L'esito codificato
+     */
+    static long scansiona(CharSequence cf, int inizio) {
+        long flag = 0;
+        // Somma pesata dei caratteri effettivi (regola ufficiale) e della forma base con le cifre,
+        // che per gli omocodici registrati con la vecchia convenzione dà il carattere di controllo
+        int somma = 0;
+        int sommaBase = 0;
+        int anno = 0;
+        int mese = -1;
+        int giorno = 0;
+        int belfiore = 0;
+
+        for (int i = 0; i < LUNGHEZZA; i++) {
+            int c = cf.charAt(inizio + i);
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+
+            int valore;
+            int valoreCarattere;
+            if (POSIZIONI_NUMERICHE[i]) {
+                if (c >= '0' && c <= '9') {
+                    valore = c - '0';
+                    valoreCarattere = valore;
+                } else if (c >= 'A' && c <= 'Z' && CIFRE_OMOCODICHE[c - 'A'] >= 0) {
+                    valore = CIFRE_OMOCODICHE[c - 'A'];
+                    valoreCarattere = c - 'A';
+                    flag |= OMOCODICO;
+                } else {
+                    return FORMATO_NON_VALIDO;
+                }
+            } else if (c >= 'A' && c <= 'Z') {
+                valore = c - 'A';
+                valoreCarattere = valore;
+            } else {
+                return FORMATO_NON_VALIDO;
+            }
+
+            switch (i) {
+                case 6: case 7:
+                    anno = anno * 10 + valore;
+                    break;
+                case 8:
+                    mese = INDICI_MESE[valore];
+                    break;
+                case 9: case 10:
+                    giorno = giorno * 10 + valore;
+                    break;
+                case 11:
+                    belfiore = c;
+                    break;
+                case 12: case 13: case 14:
+                    belfiore = (belfiore << 8) | ('0' + valore);
+                    break;
+                case 15:
+                    if (valore != somma % 26) {
+                        flag |= CONTROLLO_ERRATO;
+                        if (valore == sommaBase % 26) {
+                            flag |= CONTROLLO_FORMA_BASE;
+                        }
+                    }
+                    break;
+                default:
+                    break;
+            }
+
+            if (i < LUNGHEZZA - 1) {
+                // Posizioni dispari (1,3,5...) e pari (2,4,6...) come in calcolaCarattereControllo
+                if ((i & 1) == 0) {
+                    somma += CodiceFiscaleValidator.VALORI_DISPARI[valoreCarattere];
+                    sommaBase += CodiceFiscaleValidator.VALORI_DISPARI[valore];
+                } else {
+                    somma += CodiceFiscaleValidator.VALORI_PARI[valoreCarattere];
+                    sommaBase += CodiceFiscaleValidator.VALORI_PARI[valore];
+                }
+            }
+        }
+
+        if (!isDataValida(anno, mese, giorno)) {
+            flag |= DATA_NON_VALIDA;
+        } else {
+            int giornoNascita = giorno > 40 ? giorno - 40 : giorno;
+            flag |= (long) (anno << 9 | mese << 5 | giornoNascita) << SPOSTAMENTO_DATA;
+        }
+
+        return flag | (belfiore & MASCHERA_BELFIORE);
+    }
+
+    /**
+     * Verifica la data con le stesse regole di {@code estraiDataNascita}.
+     */
+    private static boolean isDataValida(int anno, int indiceMese, int giorno) {
+        if (indiceMese < 0) {
+            return false;
+        }
+        if (giorno > 40) {
+            giorno -= 40;
+        }
+        if (giorno < 1) {
+            return false;
+        }
+        int annoCompleto = annoCompleto(anno);
+        return giorno <= Month.of(indiceMese + 1).length(Year.isLeap(annoCompleto));
+    }
+
+    /**
+     * Determina l'anno completo dalle due cifre del codice fiscale,
+     * con le stesse regole di {@code estraiDataNascita}.
+     */
+    static int annoCompleto(int anno) {
+        int corrente = annoCorrente();
+        int annoCompleto = (corrente / 100 - 1) * 100 + anno;
+        if (annoCompleto > corrente) {
+            annoCompleto -= 100;
+        }
+        return annoCompleto;
+    }
+
+    /**
+     * @return L'anno corrente, ricalcolato solo allo scadere dell'anno memorizzato
+     */
+    static int annoCorrente() {
+        AnnoCorrente corrente = annoCorrente;
+        if (System.currentTimeMillis() >= corrente.scadenza) {
+            corrente = AnnoCorrente.calcola();
+            annoCorrente = corrente;
+        }
+        return corrente.anno;
+    }
+
+    /**
+     * Calcola l'epoch day della data di nascita di un esito con data valida, nell'anno indicato.
+     *
+     * @param esito L'esito della scansione, con data valida
+     * @param annoCompleto L'anno completo, con le stesse ultime due cifre di quello dell'esito
+     * @return L'epoch day, o {@link Long#MIN_VALUE} se la data non esiste in quell'anno (29 febbraio)
+     */
+    static long epochDayNascita(long esito, int annoCompleto) {
+        int data = (int) (esito >>> SPOSTAMENTO_DATA) & 0xFFFF;
+        int mese = ((data >>> 5) & 0xF) + 1;
+        int giorno = data & 0x1F;
+        if (giorno > Month.of(mese).length(Year.isLeap(annoCompleto))) {
+            return Long.MIN_VALUE;
+        }
+        return LocalDate.of(annoCompleto, mese, giorno).toEpochDay();
+    }
+
+    /**
+     * @return L'anno a due cifre della data di nascita di un esito con data valida
+     */
+    static int annoNascita(long esito) {
+        return (int) (esito >>> (SPOSTAMENTO_DATA + 9)) & 0x7F;
+    }
+
+    static boolean isFormatoNonValido(long esito) {
+        return (esito & FORMATO_NON_VALIDO) != 0;
+    }
+
+    static boolean isDataNonValida(long esito) {
+        return (esito & DATA_NON_VALIDA) != 0;
+    }
+
+    static boolean isControlloErrato(long esito) {
+        return (esito & CONTROLLO_ERRATO) != 0;
+    }
+
+    /**
+     * @return true se il carattere di controllo è errato ma coincide con quello della forma base
+     *         dell'omocodico, calcolato sulle cifre invece che sulle lettere
+     */
+    static boolean isControlloFormaBase(long esito) {
+        return (esito & CONTROLLO_FORMA_BASE) != 0;
+    }
+
+    static boolean isOmocodico(long esito) {
+        return (esito & OMOCODICO) != 0;
+    }
+
+    /**
+     * Restituisce il codice belfiore normalizzato impacchettato in un int (un carattere per byte).
+     */
+    static int codiceBelfiore(long esito) {
+        return (int) (esito & MASCHERA_BELFIORE);
+    }
+
+    /**
+     * Converte un codice belfiore impacchettato nella sua forma testuale.
+     */
+    static String codiceBelfioreToString(int belfiore) {
+        return new String(new char[]{
+                (char) (belfiore >>> 24),
+                (char) ((belfiore >>> 16) & 0xFF),
+                (char) ((belfiore >>> 8) & 0xFF),
+                (char) (belfiore & 0xFF)
+        });
+    }
+
+    private static int[] tabellaLettere(String lettere) {
+        int[] tabella = new int[26];
+        for (int i = 0; i < tabella.length; i++) {
+            tabella[i] = lettere.indexOf('A' + i);
+        }
+        return tabella;
+    }
+
+    /**
+     * Anno corrente con l'istante (in millisecondi) in cui smette di esserlo.
+     */
+    private static final class AnnoCorrente {
+        private final int anno;
+        private final long scadenza;
+
+        private AnnoCorrente(int anno, long scadenza) {
+            this.anno = anno;
+            this.scadenza = scadenza;
+        }
+
+        private static AnnoCorrente calcola() {
+            ZoneId zona = ZoneId.systemDefault();
+            LocalDate oggi = LocalDate.now(zona);
+            long scadenza = LocalDate.of(oggi.getYear() + 1, 1, 1)
+                    .atStartOfDay(zona).toInstant().toEpochMilli();
+            return new AnnoCorrente(oggi.getYear(), scadenza);
+        }
+    }
+}
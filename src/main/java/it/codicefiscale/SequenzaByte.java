@@ -0,0 +1,51 @@
+package it.codicefiscale;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Vista riutilizzabile di un intervallo di byte ASCII come {@link CharSequence}.
+ * Permette di validare codici fiscali letti da file senza decodificarli in {@link String}:
+ * la stessa istanza viene riposizionata su ogni record. Non è thread-safe.
+ */
+final class SequenzaByte implements CharSequence {
+
+    private ByteBuffer buffer;
+    private int inizio;
+    private int lunghezza;
+
+    /**
+     * Posiziona la vista sull'intervallo [inizio, inizio + lunghezza) del buffer (indici assoluti).
+     *
+     * @return Questa istanza
+     */
+    SequenzaByte imposta(ByteBuffer buffer, int inizio, int lunghezza) {
+        this.buffer = buffer;
+        this.inizio = inizio;
+        this.lunghezza = lunghezza;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return lunghezza;
+    }
+
+    @Override
+    public char charAt(int indice) {
+        return (char) (buffer.get(inizio + indice) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int da, int a) {
+        return toString().substring(da, a);
+    }
+
+    @Override
+    public String toString() {
+        char[] caratteri = new char[lunghezza];
+        for (int i = 0; i < lunghezza; i++) {
+            caratteri[i] = charAt(i);
+        }
+        return new String(caratteri);
+    }
+}
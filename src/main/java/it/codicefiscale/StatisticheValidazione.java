@@ -0,0 +1,91 @@
+package it.codicefiscale;
+
+import it.codicefiscale.CodiceFiscaleValidator.Risultato.TipoErrore;
+
+import java.util.Arrays;
+
+/**
+ * Statistiche aggregate della validazione di un lotto di codici fiscali:
+ * numero di codici per {@link TipoErrore} e numero di codici omocodici.
+ * Le istanze sono immutabili.
+ */
+public final class StatisticheValidazione {
+
+    private static final TipoErrore[] TIPI_ERRORE = TipoErrore.values();
+
+    // Indice del contatore degli omocodici, dopo quelli dei tipi di errore
+    static final int INDICE_OMOCODICI = TIPI_ERRORE.length;
+
+    // Numero di contatori usati durante l'aggregazione
+    static final int NUMERO_CONTATORI = INDICE_OMOCODICI + 1;
+
+    private final long[] conteggi;
+
+    /**
+     * @param conteggi Contatori per ordinale di {@link TipoErrore} seguiti da quello degli omocodici
+     */
+    StatisticheValidazione(long[] conteggi) {
+        this.conteggi = Arrays.copyOf(conteggi, NUMERO_CONTATORI);
+    }
+
+    /**
+     * Aggiorna un array di contatori con l'esito compatto di un codice.
+     */
+    static void registra(long[] conteggi, int esito) {
+        conteggi[esito & RisultatiBatch.ESITO_TIPO_ERRORE]++;
+        if ((esito & RisultatiBatch.ESITO_OMOCODICO) != 0) {
+            conteggi[INDICE_OMOCODICI]++;
+        }
+    }
+
+    /**
+     * Somma i contatori di {@code altri} in {@code conteggi}.
+     */
+    static void unisci(long[] conteggi, long[] altri) {
+        for (int i = 0; i < NUMERO_CONTATORI; i++) {
+            conteggi[i] += altri[i];
+        }
+    }
+
+    /**
+     * @param tipoErrore Il tipo di errore ({@code NESSUN_ERRORE} per i codici validi)
+     * @return Il numero di codici con quel tipo di errore
+     */
+    public long getConteggio(TipoErrore tipoErrore) {
+        return conteggi[tipoErrore.ordinal()];
+    }
+
+    /**
+     * @return Il numero di codici validi
+     */
+    public long getValidi() {
+        return getConteggio(TipoErrore.NESSUN_ERRORE);
+    }
+
+    /**
+     * @return Il numero di codici omocodici (validi o meno)
+     */
+    public long getOmocodici() {
+        return conteggi[INDICE_OMOCODICI];
+    }
+
+    /**
+     * @return Il numero totale di codici validati
+     */
+    public long getTotale() {
+        long totale = 0;
+        for (int i = 0; i < INDICE_OMOCODICI; i++) {
+            totale += conteggi[i];
+        }
+        return totale;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("StatisticheValidazione{totale=").append(getTotale());
+        for (TipoErrore tipoErrore : TIPI_ERRORE) {
+            sb.append(", ").append(tipoErrore).append('=').append(getConteggio(tipoErrore));
+        }
+        return sb.append(", omocodici=").append(getOmocodici()).append('}').toString();
+    }
+}
@@ -0,0 +1,61 @@
+package it.codicefiscale;
+
+/**
+ * Correzione proposta per un codice fiscale non valido da
+ * {@link CodiceFiscaleValidator#suggerisciCorrezioni(CharSequence, int)}.
+ * Le istanze sono immutabili.
+ */
+public final class Suggerimento {
+
+    /**
+     * Tipo di errore di battitura corretto.
+     */
+    public enum TipoCorrezione {
+        // Un carattere sostituito da un altro
+        SOSTITUZIONE,
+        // Due caratteri adiacenti scambiati
+        TRASPOSIZIONE
+    }
+
+    private final String codiceFiscale;
+    private final TipoCorrezione tipo;
+    private final int posizione;
+    private final int costo;
+
+    Suggerimento(String codiceFiscale, TipoCorrezione tipo, int posizione, int costo) {
+        this.codiceFiscale = codiceFiscale;
+        this.tipo = tipo;
+        this.posizione = posizione;
+        this.costo = costo;
+    }
+
+    /**
+     * @return Il codice fiscale corretto, valido secondo {@link CodiceFiscaleValidator#validaFormato(CharSequence)}
+     */
+    public String getCodiceFiscale() {
+        return codiceFiscale;
+    }
+
+    public TipoCorrezione getTipo() {
+        return tipo;
+    }
+
+    /**
+     * @return La posizione (0-based) del carattere corretto, o del primo dei due caratteri scambiati
+     */
+    public int getPosizione() {
+        return posizione;
+    }
+
+    /**
+     * @return Il costo stimato dell'errore: più è basso, più l'errore di battitura è probabile
+     */
+    public int getCosto() {
+        return costo;
+    }
+
+    @Override
+    public String toString() {
+        return codiceFiscale + " (" + tipo + " in posizione " + posizione + ", costo " + costo + ")";
+    }
+}
@@ -0,0 +1,279 @@
+package it.codicefiscale;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Motore dei suggerimenti di {@link CodiceFiscaleValidator#suggerisciCorrezioni(CharSequence, int)}.
+ *
+ * <p>Considera le sostituzioni di un carattere e gli scambi di due caratteri adiacenti.
+ * Il carattere di controllo dipende dalla somma pesata dei primi 15 caratteri modulo 26:
+ * per ogni posizione le tabelle precalcolate raggruppano i caratteri ammessi (stessa classe
+ * dell'espressione regolare del formato, con il mese limitato alle lettere dei mesi) per resto
+ * del loro peso, quindi i caratteri che rendono corretto il controllo si leggono direttamente
+ * dalla tabella senza provarli tutti. Solo i candidati così ottenuti, una ventina per codice,
+ * vengono validati con le regole di {@code validaFormato} (data di nascita e registro dei comuni).</p>
+ *
+ * <p>I pesi sono quelli della regola ufficiale, calcolati sui caratteri effettivi come nello scanner.
+ * Se il validatore accetta anche il carattere di controllo della forma base degli omocodici,
+ * la ricerca è ripetuta con le tabelle in cui le lettere omocodiche hanno il peso della cifra
+ * che sostituiscono.</p>
+ *
+ * <p>I candidati validi sono ordinati per costo: confusioni visive (0/O, 1/I, 5/S...) e tasti vicini
+ * sulla tastiera costano meno delle altre sostituzioni, gli scambi di caratteri costano poco,
+ * le lettere omocodiche in un codice che non lo è costano di più.</p>
+ */
+final class SuggeritoreCorrezioni {
+
+    private static final int LUNGHEZZA = ScannerCodiceFiscale.LUNGHEZZA;
+    private static final int POSIZIONE_CONTROLLO = LUNGHEZZA - 1;
+
+    private static final String LETTERE = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final String CIFRE_E_OMOCODICI = "0123456789LMNPQRSTUV";
+    private static final String LETTERE_OMOCODICHE = "LMNPQRSTUV";
+
+    // Peso di ogni carattere ASCII in ciascuna delle prime 15 posizioni, -1 se non ammesso
+    private static final int[][] PESI = new int[POSIZIONE_CONTROLLO][128];
+
+    // Caratteri ammessi in ciascuna posizione, raggruppati per resto del peso modulo 26
+    private static final char[][][] PER_RESTO = new char[POSIZIONE_CONTROLLO][26][];
+
+    // Come PESI e PER_RESTO, ma con le lettere omocodiche pesate come la cifra che sostituiscono
+    private static final int[][] PESI_FORMA_BASE = new int[POSIZIONE_CONTROLLO][128];
+    private static final char[][][] PER_RESTO_FORMA_BASE = new char[POSIZIONE_CONTROLLO][26][];
+
+    // Costi delle sostituzioni tra caratteri ASCII
+    private static final int[][] COSTI = new int[128][128];
+
+    private static final int COSTO_SIMILE = 1;
+    private static final int COSTO_TASTO_VICINO = 2;
+    private static final int COSTO_SOSTITUZIONE = 4;
+    private static final int COSTO_TRASPOSIZIONE = 1;
+    private static final int COSTO_OMOCODIA = 2;
+
+    // Coppie di caratteri facili da confondere alla lettura
+    private static final String[] SIMILI = {"0O", "0D", "0Q", "OD", "OQ", "1I", "1L", "IL", "2Z", "5S", "6G",
+            "8B", "UV", "MN", "EF", "PR", "CG"};
+
+    // Righe della tastiera con lo sfalsamento orizzontale di ciascuna
+    private static final String[] RIGHE_TASTIERA = {"1234567890", "QWERTYUIOP", "ASDFGHJKL", "ZXCVBNM"};
+    private static final double[] SFALSAMENTI = {0, 0.5, 0.75, 1.25};
+
+    private static final Comparator<Suggerimento> ORDINE = Comparator.comparingInt(Suggerimento::getCosto)
+            .thenComparingInt(Suggerimento::getPosizione)
+            .thenComparing(Suggerimento::getCodiceFiscale);
+
+    static {
+        riempiPesi(PESI, PER_RESTO, false);
+        riempiPesi(PESI_FORMA_BASE, PER_RESTO_FORMA_BASE, true);
+
+        for (int[] riga : COSTI) {
+            Arrays.fill(riga, COSTO_SOSTITUZIONE);
+        }
+        for (int r1 = 0; r1 < RIGHE_TASTIERA.length; r1++) {
+            for (int r2 = 0; r2 < RIGHE_TASTIERA.length; r2++) {
+                if (Math.abs(r1 - r2) > 1) {
+                    continue;
+                }
+                for (int i = 0; i < RIGHE_TASTIERA[r1].length(); i++) {
+                    for (int j = 0; j < RIGHE_TASTIERA[r2].length(); j++) {
+                        double distanza = Math.abs(SFALSAMENTI[r1] + i - SFALSAMENTI[r2] - j);
+                        if (distanza <= 1 && (r1 != r2 || i != j)) {
+                            COSTI[RIGHE_TASTIERA[r1].charAt(i)][RIGHE_TASTIERA[r2].charAt(j)] = COSTO_TASTO_VICINO;
+                        }
+                    }
+                }
+            }
+        }
+        for (String coppia : SIMILI) {
+            COSTI[coppia.charAt(0)][coppia.charAt(1)] = COSTO_SIMILE;
+            COSTI[coppia.charAt(1)][coppia.charAt(0)] = COSTO_SIMILE;
+        }
+    }
+
+    private SuggeritoreCorrezioni() {
+    }
+
+    private static void riempiPesi(int[][] pesi, char[][][] perResto, boolean formaBase) {
+        for (int p = 0; p < POSIZIONE_CONTROLLO; p++) {
+            String ammessi = p == 8 ? CodiceFiscaleValidator.MESI
+                    : isPosizioneNumerica(p) ? CIFRE_E_OMOCODICI : LETTERE;
+            Arrays.fill(pesi[p], -1);
+            List<List<Character>> gruppi = new ArrayList<>();
+            for (int r = 0; r < 26; r++) {
+                gruppi.add(new ArrayList<>());
+            }
+            for (char c : ammessi.toCharArray()) {
+                int valore = c <= '9' ? c - '0'
+                        : formaBase && isPosizioneNumerica(p) ? LETTERE_OMOCODICHE.indexOf(c) : c - 'A';
+                pesi[p][c] = (p & 1) == 0 ? CodiceFiscaleValidator.VALORI_DISPARI[valore] : CodiceFiscaleValidator.VALORI_PARI[valore];
+                gruppi.get(pesi[p][c] % 26).add(c);
+            }
+            for (int r = 0; r < 26; r++) {
+                perResto[p][r] = new char[gruppi.get(r).size()];
+                for (int i = 0; i < perResto[p][r].length; i++) {
+                    perResto[p][r][i] = gruppi.get(r).get(i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cerca le correzioni di un codice fiscale non valido.
+     *
+     * @param validator Il validatore con cui verificare i candidati
+     * @param codiceFiscale Il codice fiscale (spazi iniziali/finali e minuscole sono ammessi)
+     * @param massimo Il numero massimo di suggerimenti
+     * @return I suggerimenti in ordine di costo crescente; vuota se il codice è già valido o non ha 16 caratteri
+     */
+    static List<Suggerimento> suggerisci(CodiceFiscaleValidator validator, CharSequence codiceFiscale, int massimo) {
+        if (codiceFiscale == null || massimo <= 0) {
+            return Collections.emptyList();
+        }
+        String cf = codiceFiscale.toString().trim().toUpperCase(Locale.ROOT);
+        if (cf.length() != LUNGHEZZA || isValido(validator, cf)) {
+            return Collections.emptyList();
+        }
+
+        char[] caratteri = cf.toCharArray();
+        for (char c : caratteri) {
+            if (c >= 128) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<Suggerimento> suggerimenti = new ArrayList<>();
+        cerca(validator, caratteri, PESI, PER_RESTO, suggerimenti);
+        if (validator.isControlloFormaBaseAccettato()) {
+            cerca(validator, caratteri, PESI_FORMA_BASE, PER_RESTO_FORMA_BASE, suggerimenti);
+        }
+
+        suggerimenti.sort(ORDINE);
+        if (validator.isControlloFormaBaseAccettato()) {
+            // Un candidato trovato con entrambe le regole resta una volta sola, con il costo minore
+            Set<String> codici = new HashSet<>();
+            suggerimenti.removeIf(s -> !codici.add(s.getCodiceFiscale()));
+        }
+        return suggerimenti.size() > massimo ? new ArrayList<>(suggerimenti.subList(0, massimo)) : suggerimenti;
+    }
+
+    /**
+     * Aggiunge i candidati il cui carattere di controllo è corretto con i pesi indicati.
+     */
+    private static void cerca(CodiceFiscaleValidator validator, char[] caratteri, int[][] tabellaPesi,
+                              char[][][] perResto, List<Suggerimento> suggerimenti) {
+        // Somma dei pesi dei caratteri ammessi e numero di caratteri non ammessi nella loro posizione
+        int[] pesi = new int[POSIZIONE_CONTROLLO];
+        int somma = 0;
+        int nonAmmessi = 0;
+        boolean omocodico = false;
+        for (int p = 0; p < POSIZIONE_CONTROLLO; p++) {
+            pesi[p] = tabellaPesi[p][caratteri[p]];
+            if (pesi[p] < 0) {
+                nonAmmessi++;
+            } else {
+                somma += pesi[p];
+            }
+            omocodico |= isPosizioneNumerica(p) && caratteri[p] > '9';
+        }
+        char controllo = caratteri[POSIZIONE_CONTROLLO];
+        boolean controlloAmmesso = controllo >= 'A' && controllo <= 'Z';
+
+        // Sostituzioni nelle prime 15 posizioni: servono i caratteri con il peso che dà il resto del controllo
+        if (controlloAmmesso) {
+            for (int p = 0; p < POSIZIONE_CONTROLLO; p++) {
+                if (nonAmmessi - (pesi[p] < 0 ? 1 : 0) > 0) {
+                    continue;
+                }
+                int sommaAltri = somma - Math.max(pesi[p], 0);
+                int resto = Math.floorMod(controllo - 'A' - sommaAltri, 26);
+                for (char sostituto : perResto[p][resto]) {
+                    if (sostituto == caratteri[p]) {
+                        continue;
+                    }
+                    int costo = COSTI[caratteri[p]][sostituto];
+                    if (!omocodico && isPosizioneNumerica(p) && sostituto > '9') {
+                        costo += COSTO_OMOCODIA;
+                    }
+                    aggiungi(validator, suggerimenti, caratteri, p, sostituto, Suggerimento.TipoCorrezione.SOSTITUZIONE, costo);
+                }
+            }
+        }
+
+        // Sostituzione del carattere di controllo
+        if (nonAmmessi == 0) {
+            char atteso = (char) ('A' + somma % 26);
+            if (atteso != controllo) {
+                aggiungi(validator, suggerimenti, caratteri, POSIZIONE_CONTROLLO, atteso,
+                        Suggerimento.TipoCorrezione.SOSTITUZIONE, COSTI[controllo][atteso]);
+            }
+        }
+
+        // Scambi di caratteri adiacenti
+        for (int p = 0; p < POSIZIONE_CONTROLLO; p++) {
+            char primo = caratteri[p];
+            char secondo = caratteri[p + 1];
+            if (primo == secondo) {
+                continue;
+            }
+            int pesoPrimo = tabellaPesi[p][secondo];
+            if (pesoPrimo < 0) {
+                continue;
+            }
+            int residui = nonAmmessi - (pesi[p] < 0 ? 1 : 0);
+            int sommaScambio = somma - Math.max(pesi[p], 0) + pesoPrimo;
+            char controlloScambio;
+            if (p + 1 < POSIZIONE_CONTROLLO) {
+                int pesoSecondo = tabellaPesi[p + 1][primo];
+                residui -= pesi[p + 1] < 0 ? 1 : 0;
+                if (pesoSecondo < 0 || !controlloAmmesso) {
+                    continue;
+                }
+                sommaScambio += pesoSecondo - Math.max(pesi[p + 1], 0);
+                controlloScambio = controllo;
+            } else {
+                // Il primo carattere diventa il carattere di controllo
+                controlloScambio = primo;
+                if (controlloScambio < 'A' || controlloScambio > 'Z') {
+                    continue;
+                }
+            }
+            if (residui == 0 && sommaScambio % 26 == controlloScambio - 'A') {
+                char[] candidato = caratteri.clone();
+                candidato[p] = secondo;
+                candidato[p + 1] = primo;
+                aggiungi(validator, suggerimenti, candidato, Suggerimento.TipoCorrezione.TRASPOSIZIONE, p, COSTO_TRASPOSIZIONE);
+            }
+        }
+    }
+
+    private static void aggiungi(CodiceFiscaleValidator validator, List<Suggerimento> suggerimenti, char[] caratteri,
+                                 int posizione, char sostituto, Suggerimento.TipoCorrezione tipo, int costo) {
+        char[] candidato = caratteri.clone();
+        candidato[posizione] = sostituto;
+        aggiungi(validator, suggerimenti, candidato, tipo, posizione, costo);
+    }
+
+    private static void aggiungi(CodiceFiscaleValidator validator, List<Suggerimento> suggerimenti, char[] candidato,
+                                 Suggerimento.TipoCorrezione tipo, int posizione, int costo) {
+        String codice = new String(candidato);
+        if (isValido(validator, codice)) {
+            suggerimenti.add(new Suggerimento(codice, tipo, posizione, costo));
+        }
+    }
+
+    private static boolean isValido(CodiceFiscaleValidator validator, String codice) {
+        return (validator.valutaFormato(codice) & RisultatiBatch.ESITO_TIPO_ERRORE)
+                == CodiceFiscaleValidator.Risultato.TipoErrore.NESSUN_ERRORE.ordinal();
+    }
+
+    private static boolean isPosizioneNumerica(int p) {
+        return p == 6 || p == 7 || p == 9 || p == 10 || p >= 12;
+    }
+}
@@ -0,0 +1,271 @@
+package it.codicefiscale;
+
+import it.codicefiscale.CodiceFiscaleValidator.Risultato.TipoErrore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Validazione in streaming di file CSV/TSV contenenti codici fiscali.
+ * Il file viene letto a blocchi tramite canali NIO e ogni riga viene riscritta sul canale di uscita
+ * con tre colonne aggiuntive: validità, {@link TipoErrore} e omocodia. La memoria occupata
+ * dipende solo dalla dimensione dei buffer, non da quella del file.
+ *
+ * <p>Le righe sono trattate come byte: il codice fiscale viene validato direttamente dal buffer
+ * di lettura senza creare stringhe, con la stessa semantica di
+ * {@link CodiceFiscaleValidator#validaFormato(CharSequence)}. Sono supportati i campi tra
+ * virgolette doppie; i terminatori di riga ammessi sono LF e CRLF.</p>
+ */
+public class ValidatoreCsv {
+
+    // Dimensione dei buffer di lettura e scrittura
+    private static final int DIMENSIONE_BUFFER = 64 * 1024;
+
+    // Lunghezza massima di una riga, oltre la quale il file viene considerato non valido
+    private static final int LUNGHEZZA_MASSIMA_RIGA = 1024 * 1024;
+
+    private static final String[] COLONNE_AGGIUNTIVE = {"valido", "tipo_errore", "omocodico"};
+
+    private final CodiceFiscaleValidator validator;
+    private final int colonna;
+    private final char separatore;
+    private final boolean intestazione;
+
+    // Suffisso da aggiungere a ogni riga, indicizzato per esito compatto
+    private final byte[][] annotazioni;
+
+    /**
+     * Crea un validatore per file con il codice fiscale nella prima colonna, separatore ';' e senza intestazione.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     */
+    public ValidatoreCsv(CodiceFiscaleValidator validator) {
+        this(validator, 0, ';', false);
+    }
+
+    /**
+     * Crea un validatore per file CSV/TSV.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     * @param colonna Indice (da 0) della colonna che contiene il codice fiscale
+     * @param separatore Il separatore di campo (es. ',', ';' o '\t'), deve essere un carattere ASCII
+     * @param intestazione true se la prima riga è un'intestazione da non validare
+     */
+    public ValidatoreCsv(CodiceFiscaleValidator validator, int colonna, char separatore, boolean intestazione) {
+        if (colonna < 0) {
+            throw new IllegalArgumentException("Indice di colonna non valido: " + colonna);
+        }
+        if (separatore == '"' || separatore == '\n' || separatore == '\r' || separatore > 0x7F) {
+            throw new IllegalArgumentException("Separatore non valido: " + separatore);
+        }
+        this.validator = validator;
+        this.colonna = colonna;
+        this.separatore = separatore;
+        this.intestazione = intestazione;
+        this.annotazioni = creaAnnotazioni(separatore);
+    }
+
+    /**
+     * Valida un file scrivendo le righe annotate in un altro file (sovrascritto se esiste).
+     *
+     * @param ingresso Il file CSV/TSV da validare
+     * @param uscita Il file in cui scrivere le righe annotate
+     * @return Le statistiche della validazione
+     * @throws IOException Se si verifica un errore di lettura o scrittura
+     */
+    public StatisticheValidazione valida(Path ingresso, Path uscita) throws IOException {
+        try (FileChannel in = FileChannel.open(ingresso, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(uscita, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            return valida(in, out);
+        }
+    }
+
+    /**
+     * Valida le righe lette da un canale scrivendo le righe annotate sul canale di uscita.
+     * I canali non vengono chiusi.
+     *
+     * @param ingresso Il canale da cui leggere il CSV/TSV
+     * @param uscita Il canale su cui scrivere le righe annotate
+     * @return Le statistiche della validazione
+     * @throws IOException Se si verifica un errore di lettura o scrittura, o una riga è troppo lunga
+     */
+    public StatisticheValidazione valida(ReadableByteChannel ingresso, WritableByteChannel uscita) throws IOException {
+        ByteBuffer lettura = ByteBuffer.allocate(DIMENSIONE_BUFFER);
+        ByteBuffer scrittura = ByteBuffer.allocate(DIMENSIONE_BUFFER);
+        SequenzaByte campo = new SequenzaByte();
+        long[] conteggi = new long[StatisticheValidazione.NUMERO_CONTATORI];
+        boolean primaRiga = true;
+        boolean fineFile = false;
+
+        lettura.flip();
+        while (true) {
+            // Cerca la fine della prossima riga nei dati già letti
+            int fineRiga = cercaFineRiga(lettura);
+            if (fineRiga < 0) {
+                if (!fineFile) {
+                    int residui = lettura.remaining();
+                    lettura = riempi(ingresso, lettura);
+                    fineFile = lettura.remaining() == residui;
+                    continue;
+                }
+                if (!lettura.hasRemaining()) {
+                    break;
+                }
+                // Ultima riga senza terminatore
+                fineRiga = lettura.limit();
+            }
+
+            int inizioRiga = lettura.position();
+            int fineContenuto = fineRiga;
+            if (fineContenuto > inizioRiga && lettura.get(fineContenuto - 1) == '\r') {
+                fineContenuto--;
+            }
+
+            byte[] suffisso;
+            if (primaRiga && intestazione) {
+                suffisso = intestazioneAggiuntiva();
+            } else {
+                int esito = valutaRiga(lettura, inizioRiga, fineContenuto, campo);
+                StatisticheValidazione.registra(conteggi, esito);
+                suffisso = annotazioni[esito];
+            }
+            primaRiga = false;
+
+            scrivi(uscita, scrittura, lettura, inizioRiga, fineContenuto);
+            scrivi(uscita, scrittura, suffisso);
+            scrivi(uscita, scrittura, (byte) '\n');
+
+            lettura.position(Math.min(fineRiga + 1, lettura.limit()));
+        }
+
+        svuota(uscita, scrittura);
+        return new StatisticheValidazione(conteggi);
+    }
+
+    /**
+     * Compatta il buffer di lettura e lo riempie dal canale, ingrandendolo se la riga corrente
+     * occupa già tutto il buffer. A fine file il buffer restituito non contiene nuovi dati.
+     */
+    private static ByteBuffer riempi(ReadableByteChannel ingresso, ByteBuffer lettura) throws IOException {
+        lettura.compact();
+        if (!lettura.hasRemaining()) {
+            if (lettura.capacity() >= LUNGHEZZA_MASSIMA_RIGA) {
+                throw new IOException("Riga più lunga di " + LUNGHEZZA_MASSIMA_RIGA + " byte");
+            }
+            ByteBuffer piuGrande = ByteBuffer.allocate(Math.min(lettura.capacity() * 2, LUNGHEZZA_MASSIMA_RIGA));
+            lettura.flip();
+            piuGrande.put(lettura);
+            lettura = piuGrande;
+        }
+        int letti;
+        do {
+            letti = ingresso.read(lettura);
+        } while (letti == 0);
+        lettura.flip();
+        return lettura;
+    }
+
+    private static int cercaFineRiga(ByteBuffer buffer) {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Individua il campo del codice fiscale nella riga [inizio, fine) e lo valida.
+     */
+    private int valutaRiga(ByteBuffer riga, int inizio, int fine, SequenzaByte campo) {
+        int indiceCampo = 0;
+        int inizioCampo = inizio;
+        boolean traVirgolette = false;
+
+        for (int i = inizio; i <= fine; i++) {
+            byte b = i < fine ? riga.get(i) : (byte) separatore;
+            if (b == '"') {
+                traVirgolette = !traVirgolette;
+            } else if (b == separatore && (!traVirgolette || i == fine)) {
+                if (indiceCampo == colonna) {
+                    int fineCampo = i;
+                    // Rimuove le virgolette che racchiudono il campo
+                    if (fineCampo - inizioCampo >= 2 && riga.get(inizioCampo) == '"'
+                            && riga.get(fineCampo - 1) == '"') {
+                        inizioCampo++;
+                        fineCampo--;
+                    }
+                    return validator.valutaFormato(campo.imposta(riga, inizioCampo, fineCampo - inizioCampo));
+                }
+                indiceCampo++;
+                inizioCampo = i + 1;
+            }
+        }
+
+        // La riga ha meno colonne del previsto
+        return TipoErrore.FORMATO_NON_VALIDO.ordinal();
+    }
+
+    private static void scrivi(WritableByteChannel uscita, ByteBuffer scrittura,
+                               ByteBuffer sorgente, int da, int a) throws IOException {
+        for (int i = da; i < a; i++) {
+            if (!scrittura.hasRemaining()) {
+                svuota(uscita, scrittura);
+            }
+            scrittura.put(sorgente.get(i));
+        }
+    }
+
+    private static void scrivi(WritableByteChannel uscita, ByteBuffer scrittura, byte[] dati) throws IOException {
+        if (scrittura.remaining() < dati.length) {
+            svuota(uscita, scrittura);
+        }
+        scrittura.put(dati);
+    }
+
+    private static void scrivi(WritableByteChannel uscita, ByteBuffer scrittura, byte dato) throws IOException {
+        if (!scrittura.hasRemaining()) {
+            svuota(uscita, scrittura);
+        }
+        scrittura.put(dato);
+    }
+
+    private static void svuota(WritableByteChannel uscita, ByteBuffer scrittura) throws IOException {
+        scrittura.flip();
+        while (scrittura.hasRemaining()) {
+            uscita.write(scrittura);
+        }
+        scrittura.clear();
+    }
+
+    private byte[] intestazioneAggiuntiva() {
+        StringBuilder sb = new StringBuilder();
+        for (String nome : COLONNE_AGGIUNTIVE) {
+            sb.append(separatore).append(nome);
+        }
+        return sb.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Precalcola il suffisso ";valido;TIPO_ERRORE;omocodico" per ogni possibile esito compatto.
+     */
+    private static byte[][] creaAnnotazioni(char separatore) {
+        byte[][] annotazioni = new byte[RisultatiBatch.ESITO_OMOCODICO * 2][];
+        for (TipoErrore tipoErrore : TipoErrore.values()) {
+            for (boolean omocodico : new boolean[]{false, true}) {
+                int esito = tipoErrore.ordinal() | (omocodico ? RisultatiBatch.ESITO_OMOCODICO : 0);
+                String suffisso = "" + separatore + (tipoErrore == TipoErrore.NESSUN_ERRORE)
+                        + separatore + tipoErrore + separatore + omocodico;
+                annotazioni[esito] = suffisso.getBytes(StandardCharsets.US_ASCII);
+            }
+        }
+        return annotazioni;
+    }
+}
@@ -0,0 +1,140 @@
+package it.codicefiscale;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Motore di validazione parallela per grandi lotti di codici fiscali.
+ * Il lotto viene suddiviso ricorsivamente in blocchi elaborati dai thread di un {@link ForkJoinPool};
+ * ogni blocco conta i propri esiti per {@link CodiceFiscaleValidator.Risultato.TipoErrore}
+ * e i conteggi vengono uniti risalendo l'albero dei task, senza contatori condivisi.
+ *
+ * <p>La verifica dei codici belfiore usa il registro immutabile in memoria del validator,
+ * quindi i blocchi non competono per la connessione al database.</p>
+ */
+public class ValidatoreParallelo {
+
+    // Dimensione predefinita sotto la quale un blocco non viene più suddiviso
+    private static final int SOGLIA_PREDEFINITA = 4096;
+
+    private final CodiceFiscaleValidator validator;
+    private final ForkJoinPool pool;
+    private final int soglia;
+
+    /**
+     * Crea un motore che usa il pool comune di fork-join.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     */
+    public ValidatoreParallelo(CodiceFiscaleValidator validator) {
+        this(validator, ForkJoinPool.commonPool(), SOGLIA_PREDEFINITA);
+    }
+
+    /**
+     * Crea un motore con pool e dimensione minima dei blocchi personalizzati.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     * @param pool Il pool in cui eseguire la validazione
+     * @param soglia Numero di codici sotto il quale un blocco viene validato senza ulteriori suddivisioni
+     */
+    public ValidatoreParallelo(CodiceFiscaleValidator validator, ForkJoinPool pool, int soglia) {
+        if (soglia < 1) {
+            throw new IllegalArgumentException("Soglia non valida: " + soglia);
+        }
+        this.validator = validator;
+        this.pool = pool;
+        this.soglia = soglia;
+    }
+
+    /**
+     * Valida in parallelo un lotto di codici calcolando solo le statistiche aggregate.
+     *
+     * @param codici I codici fiscali da validare
+     * @return Le statistiche per tipo di errore
+     */
+    public StatisticheValidazione valida(List<? extends CharSequence> codici) {
+        return valida(codici, null);
+    }
+
+    /**
+     * Valida in parallelo un lotto di codici scrivendo anche gli esiti dei singoli codici.
+     *
+     * @param codici I codici fiscali da validare
+     * @param risultati Il buffer in cui scrivere gli esiti, o null per calcolare solo le statistiche
+     * @return Le statistiche per tipo di errore
+     */
+    public StatisticheValidazione valida(List<? extends CharSequence> codici, RisultatiBatch risultati) {
+        List<? extends CharSequence> sorgente = codici instanceof RandomAccess
+                ? codici
+                : Arrays.asList(codici.toArray(new CharSequence[0]));
+        return esegui(sorgente, risultati);
+    }
+
+    /**
+     * Valida in parallelo un array di codici scrivendo anche gli esiti dei singoli codici.
+     *
+     * @param codici I codici fiscali da validare
+     * @param risultati Il buffer in cui scrivere gli esiti, o null per calcolare solo le statistiche
+     * @return Le statistiche per tipo di errore
+     */
+    public StatisticheValidazione valida(CharSequence[] codici, RisultatiBatch risultati) {
+        return esegui(Arrays.asList(codici), risultati);
+    }
+
+    private StatisticheValidazione esegui(List<? extends CharSequence> codici, RisultatiBatch risultati) {
+        if (risultati != null) {
+            risultati.inizia(codici.size());
+        }
+        long[] conteggi = pool.invoke(new TaskValidazione(codici, risultati, 0, codici.size()));
+        return new StatisticheValidazione(conteggi);
+    }
+
+    /**
+     * Task che valida l'intervallo [da, a) del lotto e restituisce i conteggi per esito.
+     */
+    private final class TaskValidazione extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<? extends CharSequence> codici;
+        private final RisultatiBatch risultati;
+        private final int da;
+        private final int a;
+
+        private TaskValidazione(List<? extends CharSequence> codici, RisultatiBatch risultati, int da, int a) {
+            this.codici = codici;
+            this.risultati = risultati;
+            this.da = da;
+            this.a = a;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (a - da <= soglia) {
+                return validaBlocco();
+            }
+
+            int meta = (da + a) >>> 1;
+            TaskValidazione sinistra = new TaskValidazione(codici, risultati, da, meta);
+            TaskValidazione destra = new TaskValidazione(codici, risultati, meta, a);
+            sinistra.fork();
+            long[] conteggi = destra.compute();
+            StatisticheValidazione.unisci(conteggi, sinistra.join());
+            return conteggi;
+        }
+
+        private long[] validaBlocco() {
+            long[] conteggi = new long[StatisticheValidazione.NUMERO_CONTATORI];
+            for (int i = da; i < a; i++) {
+                int esito = validator.valutaFormato(codici.get(i));
+                StatisticheValidazione.registra(conteggi, esito);
+                if (risultati != null) {
+                    risultati.imposta(i, esito);
+                }
+            }
+            return conteggi;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package it.codicefiscale;
+
+import it.codicefiscale.CodiceFiscaleValidator.Risultato.TipoErrore;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Validazione di file di record ASCII a larghezza fissa tramite memory mapping.
+ * Ogni record inizia con i 16 byte del codice fiscale, eventualmente seguiti da altri byte
+ * (ad esempio un terminatore di riga) fino alla lunghezza del record. I codici vengono
+ * validati direttamente dai byte mappati, senza decodifica in {@link String}, e per ogni
+ * record non valido viene notificato l'offset nel file e il {@link TipoErrore}.
+ */
+public class ValidatoreRecordFissi {
+
+    /**
+     * Riceve i record che non hanno superato la validazione.
+     */
+    @FunctionalInterface
+    public interface AscoltatoreErrori {
+        /**
+         * @param offset Offset in byte del record nel file
+         * @param tipoErrore Il tipo di errore riscontrato
+         */
+        void errore(long offset, TipoErrore tipoErrore);
+    }
+
+    // Dimensione massima di ogni regione mappata
+    private static final long DIMENSIONE_REGIONE = 256L * 1024 * 1024;
+
+    private static final TipoErrore[] TIPI_ERRORE = TipoErrore.values();
+
+    private final CodiceFiscaleValidator validator;
+    private final int lunghezzaRecord;
+
+    /**
+     * Crea un validatore per record di esattamente 16 byte, senza separatori.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     */
+    public ValidatoreRecordFissi(CodiceFiscaleValidator validator) {
+        this(validator, ScannerCodiceFiscale.LUNGHEZZA);
+    }
+
+    /**
+     * Crea un validatore per record di lunghezza fissa.
+     *
+     * @param validator Il validator da usare per i singoli codici
+     * @param lunghezzaRecord Lunghezza in byte di ogni record (almeno 16, es. 17 con terminatore LF)
+     */
+    public ValidatoreRecordFissi(CodiceFiscaleValidator validator, int lunghezzaRecord) {
+        if (lunghezzaRecord < ScannerCodiceFiscale.LUNGHEZZA) {
+            throw new IllegalArgumentException("Lunghezza del record non valida: " + lunghezzaRecord);
+        }
+        this.validator = validator;
+        this.lunghezzaRecord = lunghezzaRecord;
+    }
+
+    /**
+     * Valida tutti i record del file. Un eventuale record finale incompleto
+     * viene segnalato come {@link TipoErrore#FORMATO_NON_VALIDO}.
+     *
+     * @param file Il file da validare
+     * @param ascoltatore Destinatario dei record non validi, o null per calcolare solo le statistiche
+     * @return Le statistiche della validazione
+     * @throws IOException Se si verifica un errore di accesso al file
+     */
+    public StatisticheValidazione valida(Path file, AscoltatoreErrori ascoltatore) throws IOException {
+        long[] conteggi = new long[StatisticheValidazione.NUMERO_CONTATORI];
+        SequenzaByte record = new SequenzaByte();
+
+        try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+            long dimensioneFile = canale.size();
+            long recordCompleti = dimensioneFile / lunghezzaRecord;
+            long recordPerRegione = Math.max(1, DIMENSIONE_REGIONE / lunghezzaRecord);
+
+            for (long primo = 0; primo < recordCompleti; primo += recordPerRegione) {
+                int numeroRecord = (int) Math.min(recordPerRegione, recordCompleti - primo);
+                long inizioRegione = primo * lunghezzaRecord;
+                MappedByteBuffer regione = canale.map(FileChannel.MapMode.READ_ONLY,
+                        inizioRegione, (long) numeroRecord * lunghezzaRecord);
+                record.imposta(regione, 0, regione.limit());
+
+                for (int i = 0; i < numeroRecord; i++) {
+                    int esito = validator.valutaRecord(record, i * lunghezzaRecord);
+                    StatisticheValidazione.registra(conteggi, esito);
+                    int tipoErrore = esito & RisultatiBatch.ESITO_TIPO_ERRORE;
+                    if (ascoltatore != null && tipoErrore != TipoErrore.NESSUN_ERRORE.ordinal()) {
+                        ascoltatore.errore(inizioRegione + (long) i * lunghezzaRecord, TIPI_ERRORE[tipoErrore]);
+                    }
+                }
+            }
+
+            if (dimensioneFile % lunghezzaRecord != 0) {
+                StatisticheValidazione.registra(conteggi, TipoErrore.FORMATO_NON_VALIDO.ordinal());
+                if (ascoltatore != null) {
+                    ascoltatore.errore(recordCompleti * lunghezzaRecord, TipoErrore.FORMATO_NON_VALIDO);
+                }
+            }
+        }
+
+        return new StatisticheValidazione(conteggi);
+    }
+}
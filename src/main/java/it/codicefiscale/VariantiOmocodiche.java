@@ -0,0 +1,193 @@
+package it.codicefiscale;
+
+import java.nio.BufferOverflowException;
+import java.nio.CharBuffer;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+/**
+ * Le 128 varianti omocodiche di un codice fiscale, in ordine fisso.
+ *
+ * <p>Il bit {@code b} dell'indice di una variante indica se la cifra in posizione
+ * {@code POSIZIONI[b]} (14, 13, 12, 10, 9, 7, 6, contando da 0) è sostituita dalla lettera
+ * corrispondente della tabella "LMNPQRSTUV": la variante 0 è la forma base, la 1 sostituisce
+ * solo l'ultima cifra del codice del comune, la 127 tutte le cifre.</p>
+ *
+ * <p>Il carattere di controllo non viene ricalcolato per ogni variante: alla creazione si calcolano
+ * la somma pesata della forma base e, per ogni posizione, la differenza di peso tra lettera e cifra.
+ * La somma di ogni variante è quella della variante con un bit in meno più una sola differenza,
+ * quindi le 128 somme si ottengono con 128 addizioni.</p>
+ *
+ * <p>Le istanze sono immutabili e possono essere condivise tra thread.</p>
+ */
+public final class VariantiOmocodiche implements Iterable<String> {
+
+    // Numero di varianti: una per ogni sottoinsieme delle 7 posizioni numeriche
+    public static final int NUMERO_VARIANTI = 128;
+
+    // Posizioni (0-based) sostituite, in ordine di bit
+    static final int[] POSIZIONI = {14, 13, 12, 10, 9, 7, 6};
+
+    private static final String LETTERE_OMOCODICHE = "LMNPQRSTUV";
+
+    // Forma base con il carattere di controllo corretto (16 caratteri)
+    private final char[] base;
+
+    // Lettera omocodica della cifra della forma base in ciascuna posizione, in ordine di bit
+    private final char[] lettere = new char[POSIZIONI.length];
+
+    // Carattere di controllo di ciascuna variante
+    private final char[] controlli = new char[NUMERO_VARIANTI];
+
+    private VariantiOmocodiche(char[] base) {
+        this.base = base;
+
+        int somma = 0;
+        for (int i = 0; i < ScannerCodiceFiscale.LUNGHEZZA - 1; i++) {
+            somma += peso(i, valore(base[i]));
+        }
+
+        int[] differenze = new int[POSIZIONI.length];
+        for (int b = 0; b < POSIZIONI.length; b++) {
+            int posizione = POSIZIONI[b];
+            int cifra = base[posizione] - '0';
+            lettere[b] = LETTERE_OMOCODICHE.charAt(cifra);
+            differenze[b] = peso(posizione, lettere[b] - 'A') - peso(posizione, cifra);
+        }
+
+        int[] somme = new int[NUMERO_VARIANTI];
+        somme[0] = somma;
+        controlli[0] = (char) ('A' + somma % 26);
+        for (int v = 1; v < NUMERO_VARIANTI; v++) {
+            // Somma della variante senza il bit più basso, più la differenza di quel bit
+            somme[v] = somme[v & (v - 1)] + differenze[Integer.numberOfTrailingZeros(v)];
+            controlli[v] = (char) ('A' + somme[v] % 26);
+        }
+        base[ScannerCodiceFiscale.LUNGHEZZA - 1] = controlli[0];
+    }
+
+    /**
+     * Crea le varianti di un codice fiscale, anche omocodico o con carattere di controllo errato:
+     * la forma base è ottenuta sostituendo le lettere omocodiche con le cifre e ricalcolando
+     * il carattere di controllo.
+     *
+     * @param codiceFiscale Il codice fiscale (spazi iniziali/finali e minuscole sono ammessi)
+     * @return Le varianti omocodiche
+     * @throws IllegalArgumentException Se il codice non rispetta il formato
+     */
+    static VariantiOmocodiche di(CharSequence codiceFiscale) {
+        if (codiceFiscale == null
+                || ScannerCodiceFiscale.isFormatoNonValido(ScannerCodiceFiscale.scansiona(codiceFiscale))) {
+            throw new IllegalArgumentException("Il codice fiscale non rispetta il formato corretto: " + codiceFiscale);
+        }
+
+        char[] base = codiceFiscale.toString().trim().toUpperCase(Locale.ROOT).toCharArray();
+        for (int posizione : POSIZIONI) {
+            int cifra = LETTERE_OMOCODICHE.indexOf(base[posizione]);
+            if (cifra >= 0) {
+                base[posizione] = (char) ('0' + cifra);
+            }
+        }
+        return new VariantiOmocodiche(base);
+    }
+
+    /**
+     * @return La forma base (variante 0)
+     */
+    public String getBase() {
+        return new String(base);
+    }
+
+    /**
+     * @param indice L'indice della variante, tra 0 e {@value #NUMERO_VARIANTI} - 1
+     * @return La variante
+     */
+    public String get(int indice) {
+        char[] variante = new char[ScannerCodiceFiscale.LUNGHEZZA];
+        scrivi(indice, variante, 0);
+        return new String(variante);
+    }
+
+    /**
+     * Scrive una variante in un array senza allocare memoria.
+     *
+     * @param indice L'indice della variante, tra 0 e {@value #NUMERO_VARIANTI} - 1
+     * @param destinazione L'array di destinazione
+     * @param inizio La posizione del primo carattere nell'array
+     */
+    public void scrivi(int indice, char[] destinazione, int inizio) {
+        if (indice < 0 || indice >= NUMERO_VARIANTI) {
+            throw new IndexOutOfBoundsException("Indice della variante non valido: " + indice);
+        }
+        System.arraycopy(base, 0, destinazione, inizio, ScannerCodiceFiscale.LUNGHEZZA - 1);
+        for (int resto = indice; resto != 0; resto &= resto - 1) {
+            int b = Integer.numberOfTrailingZeros(resto);
+            destinazione[inizio + POSIZIONI[b]] = lettere[b];
+        }
+        destinazione[inizio + ScannerCodiceFiscale.LUNGHEZZA - 1] = controlli[indice];
+    }
+
+    /**
+     * Scrive tutte le varianti, in ordine, come record consecutivi di 16 caratteri a partire dalla
+     * posizione corrente del buffer, che avanza di {@value #NUMERO_VARIANTI} record.
+     * Il buffer può essere riutilizzato tra un codice e l'altro e passato a
+     * {@link CodiceFiscaleValidator#validaFormato(CharBuffer, RisultatiBatch)} dopo {@code flip()}.
+     *
+     * @param destinazione Il buffer di destinazione
+     * @throws BufferOverflowException Se il buffer non ha spazio per tutte le varianti
+     */
+    public void scriviTutte(CharBuffer destinazione) {
+        int lunghezza = NUMERO_VARIANTI * ScannerCodiceFiscale.LUNGHEZZA;
+        if (destinazione.remaining() < lunghezza) {
+            throw new BufferOverflowException();
+        }
+        if (destinazione.hasArray()) {
+            int inizio = destinazione.arrayOffset() + destinazione.position();
+            for (int v = 0; v < NUMERO_VARIANTI; v++) {
+                scrivi(v, destinazione.array(), inizio + v * ScannerCodiceFiscale.LUNGHEZZA);
+            }
+            destinazione.position(destinazione.position() + lunghezza);
+        } else {
+            char[] variante = new char[ScannerCodiceFiscale.LUNGHEZZA];
+            for (int v = 0; v < NUMERO_VARIANTI; v++) {
+                scrivi(v, variante, 0);
+                destinazione.put(variante);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int indice;
+
+            @Override
+            public boolean hasNext() {
+                return indice < NUMERO_VARIANTI;
+            }
+
+            @Override
+            public String next() {
+                if (indice >= NUMERO_VARIANTI) {
+                    throw new NoSuchElementException();
+                }
+                return get(indice++);
+            }
+        };
+    }
+
+    /**
+     * Peso di un valore (cifra o lettera, A=0) in una posizione, come in calcolaCarattereControllo:
+     * le posizioni dispari contando da 1 usano VALORI_DISPARI.
+     */
+    private static int peso(int posizione, int valore) {
+        return (posizione & 1) == 0
+                ? CodiceFiscaleValidator.VALORI_DISPARI[valore]
+                : CodiceFiscaleValidator.VALORI_PARI[valore];
+    }
+
+    private static int valore(char c) {
+        return c >= '0' && c <= '9' ? c - '0' : c - 'A';
+    }
+}
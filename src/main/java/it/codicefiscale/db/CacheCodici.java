@@ -0,0 +1,202 @@
+package it.codicefiscale.db;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache concorrente e limitata dei codici belfiore cercati per provincia e denominazione.
+ *
+ * <p>I risultati positivi e quelli negativi (ricerche senza risultato) sono tenuti in due segmenti
+ * con capacità separate, così che l'input libero errato non possa espellere i comuni validi.
+ * Ogni segmento usa l'algoritmo CLOCK (seconda possibilità): le letture marcano la voce come usata
+ * senza prendere lock, e in caso di superamento della capacità vengono rimosse per prime le voci
+ * non usate dall'ultimo passaggio. Le voci possono avere una durata massima.</p>
+ */
+final class CacheCodici {
+
+    // Valore restituito da cerca(...) per le ricerche memorizzate come senza risultato
+    static final String NESSUN_CODICE = "";
+
+    private final Segmento positivi;
+    private final Segmento negativi;
+    private final long durataNanos;
+    private final LongSupplier orologio;
+
+    private final LongAdder trovate = new LongAdder();
+    private final LongAdder mancate = new LongAdder();
+    private final LongAdder rimozioni = new LongAdder();
+    private final LongAdder scadenze = new LongAdder();
+
+    /**
+     * @param capacita Numero massimo di risultati positivi
+     * @param capacitaNegativi Numero massimo di ricerche senza risultato (0 per non memorizzarle)
+     * @param durataSecondi Durata massima di una voce in secondi (0 per nessuna scadenza)
+     */
+    CacheCodici(int capacita, int capacitaNegativi, long durataSecondi) {
+        this(capacita, capacitaNegativi, durataSecondi, System::nanoTime);
+    }
+
+    CacheCodici(int capacita, int capacitaNegativi, long durataSecondi, LongSupplier orologio) {
+        if (capacita < 0 || capacitaNegativi < 0 || durataSecondi < 0) {
+            throw new IllegalArgumentException("Parametri della cache non validi: capacita=" + capacita
+                    + ", capacitaNegativi=" + capacitaNegativi + ", durataSecondi=" + durataSecondi);
+        }
+        this.positivi = new Segmento(capacita);
+        this.negativi = new Segmento(capacitaNegativi);
+        this.durataNanos = TimeUnit.SECONDS.toNanos(durataSecondi);
+        this.orologio = orologio;
+    }
+
+    /**
+     * Cerca una chiave nella cache.
+     *
+     * @param chiave La chiave normalizzata
+     * @return Il codice belfiore, {@link #NESSUN_CODICE} se la ricerca è memorizzata come senza
+     *         risultato, o null se la chiave non è in cache
+     */
+    String cerca(String chiave) {
+        String valore = positivi.cerca(chiave);
+        if (valore == null) {
+            valore = negativi.cerca(chiave);
+        }
+        if (valore != null) {
+            trovate.increment();
+        } else {
+            mancate.increment();
+        }
+        return valore;
+    }
+
+    /**
+     * Memorizza il risultato di una ricerca.
+     *
+     * @param chiave La chiave normalizzata
+     * @param codice Il codice belfiore trovato, o null se la ricerca non ha dato risultati
+     */
+    void memorizza(String chiave, String codice) {
+        if (codice != null) {
+            positivi.memorizza(chiave, codice);
+        } else {
+            negativi.memorizza(chiave, NESSUN_CODICE);
+        }
+    }
+
+    /**
+     * Rimuove tutte le voci, lasciando invariati i contatori.
+     */
+    void svuota() {
+        positivi.svuota();
+        negativi.svuota();
+    }
+
+    /**
+     * @return Un'istantanea dei contatori e della dimensione della cache
+     */
+    StatisticheCache statistiche() {
+        return new StatisticheCache(trovate.sum(), mancate.sum(), rimozioni.sum(), scadenze.sum(),
+                positivi.voci.size(), negativi.voci.size());
+    }
+
+    private boolean isScaduta(Voce voce, long adesso) {
+        return durataNanos > 0 && adesso - voce.scadenza > 0;
+    }
+
+    private static final class Voce {
+        final String chiave;
+        final String valore;
+        final long scadenza;
+        // Bit di riferimento dell'algoritmo CLOCK
+        volatile boolean usata;
+
+        Voce(String chiave, String valore, long scadenza) {
+            this.chiave = chiave;
+            this.valore = valore;
+            this.scadenza = scadenza;
+        }
+    }
+
+    /**
+     * Segmento di capacità fissa. La coda circolare contiene almeno una voce per ogni chiave della mappa
+     * (più eventuali voci sostituite o scadute, scartate al passaggio della lancetta): limitarne la
+     * lunghezza limita quindi anche la mappa.
+     */
+    private final class Segmento {
+        final int capacita;
+        final Map<String, Voce> voci = new ConcurrentHashMap<>();
+        final Queue<Voce> lancetta = new ConcurrentLinkedQueue<>();
+        final AtomicInteger lunghezza = new AtomicInteger();
+
+        Segmento(int capacita) {
+            this.capacita = capacita;
+        }
+
+        String cerca(String chiave) {
+            Voce voce = voci.get(chiave);
+            if (voce == null) {
+                return null;
+            }
+            if (isScaduta(voce, orologio.getAsLong())) {
+                if (voci.remove(chiave, voce)) {
+                    scadenze.increment();
+                }
+                return null;
+            }
+            // Evita scritture ripetute sulla stessa linea di cache per le chiavi più lette
+            if (!voce.usata) {
+                voce.usata = true;
+            }
+            return voce.valore;
+        }
+
+        void memorizza(String chiave, String valore) {
+            if (capacita == 0) {
+                return;
+            }
+            Voce voce = new Voce(chiave, valore, orologio.getAsLong() + durataNanos);
+            voci.put(chiave, voce);
+            lancetta.add(voce);
+            if (lunghezza.incrementAndGet() > capacita) {
+                espelli();
+            }
+        }
+
+        private synchronized void espelli() {
+            long adesso = orologio.getAsLong();
+            while (lunghezza.get() > capacita) {
+                Voce voce = lancetta.poll();
+                if (voce == null) {
+                    return;
+                }
+                if (voci.get(voce.chiave) != voce) {
+                    // Voce già sostituita, scaduta o rimossa
+                    lunghezza.decrementAndGet();
+                } else if (isScaduta(voce, adesso)) {
+                    lunghezza.decrementAndGet();
+                    if (voci.remove(voce.chiave, voce)) {
+                        scadenze.increment();
+                    }
+                } else if (voce.usata) {
+                    voce.usata = false;
+                    lancetta.add(voce);
+                } else {
+                    lunghezza.decrementAndGet();
+                    if (voci.remove(voce.chiave, voce)) {
+                        rimozioni.increment();
+                    }
+                }
+            }
+        }
+
+        synchronized void svuota() {
+            voci.clear();
+            lancetta.clear();
+            lunghezza.set(0);
+        }
+    }
+}
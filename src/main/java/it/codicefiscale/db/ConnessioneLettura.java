@@ -0,0 +1,67 @@
+package it.codicefiscale.db;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Connessione in sola lettura del pool con le proprie prepared statement.
+ * Le statement vengono preparate alla prima richiesta e riutilizzate finché la connessione
+ * resta aperta, evitando di ricompilare la query a ogni ricerca. Come la connessione,
+ * le statement sono usate da un solo thread alla volta.
+ */
+final class ConnessioneLettura implements AutoCloseable {
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<>();
+
+    ConnessioneLettura(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Restituisce la prepared statement per la query indicata, preparandola alla prima richiesta.
+     * La statement non va chiusa da chi la usa.
+     *
+     * @param sql La query
+     * @return La statement riutilizzabile
+     * @throws SQLException Se la query non può essere preparata
+     */
+    PreparedStatement prepara(String sql) throws SQLException {
+        PreparedStatement stmt = statements.get(sql);
+        if (stmt == null) {
+            stmt = connection.prepareStatement(sql);
+            statements.put(sql, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * @return La connessione sottostante
+     */
+    Connection getConnection() {
+        return connection;
+    }
+
+    /**
+     * Chiude le statement e la connessione.
+     */
+    @Override
+    public void close() {
+        for (PreparedStatement stmt : statements.values()) {
+            try {
+                stmt.close();
+            } catch (SQLException e) {
+                // Ignora errori in chiusura
+            }
+        }
+        statements.clear();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // Ignora errori in chiusura
+        }
+    }
+}
@@ -3,14 +3,18 @@ package it.codicefiscale.db;
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Locale;
 
 /**
  * Classe di utilità per creare il database SQLite dai dati Excel.
@@ -20,6 +24,7 @@ public class DatabaseInitializer {
 
     private static final String EXCEL_PATH = "src/main/resources/comuni_nazioni_cf.xlsx";
     private static final String DB_PATH = "src/main/resources/database/comuni_nazioni.db";
+    private static final String REGISTRO_PATH = "src/main/resources" + RegistroBelfiore.REGISTRO_RESOURCE_PATH;
 
     // Indici delle colonne nell'Excel
     private static final int COL_SIGLA_PROVINCIA = 0;  // Prima colonna
@@ -28,8 +33,20 @@ public class DatabaseInitializer {
     private static final int COL_DATA_INIZIO = 3;      // Quarta colonna
     private static final int COL_DATA_FINE = 4;        // Quinta colonna
 
+    /**
+     * Crea il database dall'Excel e il registro binario dei codici belfiore.
+     * Con l'argomento {@code --solo-registro} rigenera soltanto il registro dal database esistente.
+     */
     public static void main(String[] args) {
         try {
+            if (args.length > 0 && "--solo-registro".equals(args[0])) {
+                Class.forName("org.sqlite.JDBC");
+                try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + DB_PATH)) {
+                    createRegistro(conn);
+                }
+                return;
+            }
+
             // Verifica che la directory esista
             File dbFile = new File(DB_PATH);
             File dbDir = dbFile.getParentFile();
@@ -76,7 +93,23 @@ public class DatabaseInitializer {
 
             // Ripristina auto-commit
             conn.setAutoCommit(true);
+
+            // Genera il registro binario dei codici belfiore
+            createRegistro(conn);
+        }
+    }
+
+    /**
+     * Genera il registro binario dei codici belfiore (hash perfetto minimale e intervalli di validità)
+     * letto a runtime da {@link RegistroBelfiore#predefinito()}.
+     */
+    private static void createRegistro(Connection conn) throws SQLException, IOException {
+        RegistroBelfiore registro = RegistroBelfiore.carica(conn);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(REGISTRO_PATH))) {
+            registro.scrivi(out);
         }
+        System.out.println("Registro dei codici belfiore creato: " + REGISTRO_PATH
+                + " (" + registro.dimensione() + " codici)");
     }
 
     /**
@@ -92,7 +125,7 @@ public class DatabaseInitializer {
                             "codice_belfiore TEXT NOT NULL, " +
                             "data_inizio_validita TEXT, " +
                             "data_fine_validita TEXT, " +
-                            "PRIMARY KEY (sigla_provincia, denominazione_ita)" +
+                            "PRIMARY KEY (sigla_provincia, denominazione_ita, codice_belfiore)" +
                             ")"
             );
 
@@ -160,10 +193,11 @@ public class DatabaseInitializer {
                         continue;
                     }
 
-                    // Inserisci nel database
-                    pstmt.setString(1, siglaProvincia);
-                    pstmt.setString(2, denominazione);
-                    pstmt.setString(3, codiceBelfiore);
+                    // Inserisci nel database con le chiavi normalizzate in maiuscolo,
+                    // così le ricerche possono usare gli indici senza UPPER(...)
+                    pstmt.setString(1, siglaProvincia.toUpperCase(Locale.ROOT));
+                    pstmt.setString(2, denominazione.toUpperCase(Locale.ROOT));
+                    pstmt.setString(3, codiceBelfiore.toUpperCase(Locale.ROOT));
                     pstmt.setString(4, dataInizio);
                     pstmt.setString(5, dataFine);
                     pstmt.executeUpdate();
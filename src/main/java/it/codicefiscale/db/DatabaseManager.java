@@ -1,47 +1,158 @@
 package it.codicefiscale.db;
 
-import java.io.File;
+import it.codicefiscale.metriche.AscoltatoreMetriche;
+import it.codicefiscale.metriche.Metriche;
+
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
-import java.sql.Connection;
-import java.sql.DriverManager;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Gestisce l'accesso al database SQLite dei comuni e nazioni.
  * Fornisce metodi per verificare la validità dei codici belfiore
  * e ottenere codici belfiore a partire da provincia e denominazione.
+ *
+ * <p>La classe è thread-safe: le query usano un pool di connessioni in sola lettura
+ * (dimensione configurabile con la proprietà di sistema {@value #PROPRIETA_CONNESSIONI}),
+ * la cache delle ricerche è concorrente e il registro dei codici belfiore è immutabile.
+ * L'istanza singleton può quindi essere condivisa da tutti i thread.</p>
+ *
+ * <p>La cache delle ricerche per provincia e denominazione è limitata, così che l'input libero
+ * non la faccia crescere indefinitamente. Le capacità e la durata delle voci si configurano con le
+ * proprietà di sistema {@value #PROPRIETA_CACHE_DIMENSIONE}, {@value #PROPRIETA_CACHE_NEGATIVI}
+ * e {@value #PROPRIETA_CACHE_DURATA}; i contatori sono disponibili con {@link #getStatisticheCache()}.</p>
  */
 public class DatabaseManager {
 
     // Nome del file del database nelle risorse
     private static final String DB_RESOURCE_PATH = "/database/comuni_nazioni.db";
 
-    // Percorso del file nella directory temporanea
-    private static final String DB_TEMP_PATH = System.getProperty("java.io.tmpdir")
-            + File.separator + "cf_validator_db.db";
-
-    // Connessione al database
-    private Connection connection;
-
-    // Cache per migliorare le performance
-    private final Map<String, String> codiciCache = new HashMap<>();
-    private final Map<String, Boolean> validitaCache = new HashMap<>();
+    // Directory in cui estrarre il database quando la risorsa non è un file (es. dentro un jar)
+    private static final String DB_TEMP_DIR = System.getProperty("java.io.tmpdir");
+
+    // Prefisso del file estratto, seguito dall'impronta del contenuto: versioni diverse
+    // del database usano file diversi e una copia obsoleta non può essere riusata
+    private static final String DB_TEMP_PREFISSO = "cf_validator_db_";
+
+    // Numero di byte dell'impronta SHA-256 usati nel nome del file estratto
+    private static final int BYTE_IMPRONTA = 8;
+
+    // Serializza le estrazioni nella stessa JVM (il lock sul file vale tra processi diversi)
+    private static final Object LOCK_ESTRAZIONE = new Object();
+
+    // Proprietà di sistema con il numero di connessioni del pool
+    public static final String PROPRIETA_CONNESSIONI = "codicefiscale.db.connessioni";
+
+    // Proprietà di sistema che carica il database in memoria invece di aprirlo da file
+    public static final String PROPRIETA_MEMORIA = "codicefiscale.db.memoria";
+
+    // Numero predefinito di connessioni del pool
+    private static final int CONNESSIONI_PREDEFINITE = 4;
+
+    // Proprietà di sistema con il numero massimo di risultati positivi in cache
+    public static final String PROPRIETA_CACHE_DIMENSIONE = "codicefiscale.cache.dimensione";
+
+    // Proprietà di sistema con il numero massimo di ricerche senza risultato in cache
+    public static final String PROPRIETA_CACHE_NEGATIVI = "codicefiscale.cache.negativi";
+
+    // Proprietà di sistema con la durata massima delle voci in cache, in secondi (0 = nessuna scadenza)
+    public static final String PROPRIETA_CACHE_DURATA = "codicefiscale.cache.durata";
+
+    // Valori predefiniti della cache: i comuni e le nazioni sono circa 14.000
+    private static final int CACHE_DIMENSIONE_PREDEFINITA = 16_384;
+    private static final int CACHE_NEGATIVI_PREDEFINITI = 1_024;
+    private static final long CACHE_DURATA_PREDEFINITA = 0;
+
+    // Query SQL per provincia e denominazione
+    // Le colonne contengono valori già in maiuscolo (vedi DatabaseInitializer), quindi il confronto
+    // diretto usa la chiave primaria invece di una scansione della tabella con UPPER(...).
+    // Le date sono nel formato dd/MM/yyyy: per ottenere il codice più recente si ordina per yyyyMMdd
+    // A parità di data (es. date assenti) vale il codice maggiore, come nel preriscaldamento
+    static final String SQL_CODICE_BELFIORE = "SELECT codice_belfiore FROM comuni_nazioni " +
+            "WHERE sigla_provincia = ? " +
+            "AND denominazione_ita = ? " +
+            "ORDER BY substr(data_inizio_validita, 7, 4) || substr(data_inizio_validita, 4, 2) " +
+            "|| substr(data_inizio_validita, 1, 2) DESC, codice_belfiore DESC " +
+            "LIMIT 1";
+
+    // Query SQL di tutte le denominazioni, in ordine crescente di validità:
+    // caricandole in cache nell'ordine, per ogni chiave resta il codice restituito da SQL_CODICE_BELFIORE
+    private static final String SQL_TUTTI_I_CODICI = "SELECT sigla_provincia, denominazione_ita, codice_belfiore " +
+            "FROM comuni_nazioni " +
+            "ORDER BY substr(data_inizio_validita, 7, 4) || substr(data_inizio_validita, 4, 2) " +
+            "|| substr(data_inizio_validita, 1, 2), codice_belfiore";
+
+    // Numero di luoghi cercati da ogni query di getCodiciBelfiore: i lotti incompleti ripetono l'ultimo luogo,
+    // così la query ha sempre lo stesso testo e la prepared statement viene riutilizzata
+    static final int LUOGHI_PER_QUERY = 256;
+
+    // Query SQL di più coppie di provincia e denominazione, in ordine crescente di validità come SQL_TUTTI_I_CODICI.
+    // Non usa tabelle temporanee perché le connessioni sono in sola lettura.
+    static final String SQL_CODICI_BELFIORE = "SELECT sigla_provincia, denominazione_ita, codice_belfiore " +
+            "FROM comuni_nazioni " +
+            "WHERE (sigla_provincia, denominazione_ita) IN (VALUES " +
+            String.join(", ", Collections.nCopies(LUOGHI_PER_QUERY, "(?, ?)")) + ") " +
+            "ORDER BY substr(data_inizio_validita, 7, 4) || substr(data_inizio_validita, 4, 2) " +
+            "|| substr(data_inizio_validita, 1, 2), codice_belfiore";
+
+    // Pool di connessioni in sola lettura al database, creato alla prima query
+    private volatile PoolConnessioni pool;
+    private final Object lockPool = new Object();
+    private boolean chiuso;
+
+    // Cache limitata delle ricerche per provincia e denominazione
+    private final CacheCodici codiciCache = new CacheCodici(
+            Integer.getInteger(PROPRIETA_CACHE_DIMENSIONE, CACHE_DIMENSIONE_PREDEFINITA),
+            Integer.getInteger(PROPRIETA_CACHE_NEGATIVI, CACHE_NEGATIVI_PREDEFINITI),
+            Long.getLong(PROPRIETA_CACHE_DURATA, CACHE_DURATA_PREDEFINITA));
+
+    // Registro in memoria dei codici belfiore, caricato alla prima richiesta
+    private volatile RegistroBelfiore registroBelfiore;
+
+    // Indice in memoria degli intervalli di validità per provincia e denominazione, caricato alla prima ricerca per data
+    private volatile IndiceValidita indiceValidita;
+
+    // Indice in memoria dei trigrammi delle denominazioni, caricato alla prima ricerca approssimata
+    private volatile IndiceTrigrammi indiceTrigrammi;
 
     // Istanza singleton
-    private static DatabaseManager instance;
+    private static volatile DatabaseManager instance;
 
     /**
      * Ottiene l'istanza singleton del gestore del database.
      *
+     * Il database viene inizializzato alla prima query, non alla creazione dell'istanza:
+     * per anticiparne l'inizializzazione usare {@link #preriscalda()}.
+     *
      * @return L'istanza del gestore
-     * @throws SQLException Se si verifica un errore nell'inizializzazione del database
+     * @throws SQLException Dichiarata per compatibilità: l'inizializzazione avviene alla prima query
      */
     public static synchronized DatabaseManager getInstance() throws SQLException {
         if (instance == null) {
@@ -52,54 +163,177 @@ public class DatabaseManager {
 
     /**
      * Costruttore privato (pattern Singleton).
+     * Non accede al database: il file viene copiato e le connessioni aperte alla prima query.
+     */
+    private DatabaseManager() {
+    }
+
+    /**
+     * Restituisce il pool di connessioni, inizializzando il database alla prima chiamata.
      *
-     * @throws SQLException Se si verifica un errore nell'inizializzazione del database
+     * @throws SQLException Se si verifica un errore nell'inizializzazione del database o il gestore è chiuso
      */
-    private DatabaseManager() throws SQLException {
-        try {
-            initializeDatabase();
-        } catch (Exception e) {
-            throw new SQLException("Errore nell'inizializzazione del database: " + e.getMessage(), e);
+    private PoolConnessioni pool() throws SQLException {
+        PoolConnessioni corrente = pool;
+        if (corrente == null) {
+            synchronized (lockPool) {
+                if (chiuso) {
+                    throw new SQLException("Il gestore del database è chiuso");
+                }
+                corrente = pool;
+                if (corrente == null) {
+                    try {
+                        corrente = initializeDatabase();
+                    } catch (ClassNotFoundException | IOException e) {
+                        throw new SQLException("Errore nell'inizializzazione del database: " + e.getMessage(), e);
+                    }
+                    pool = corrente;
+                }
+            }
         }
+        return corrente;
     }
 
     /**
-     * Inizializza il database copiandolo dalle risorse se necessario.
+     * @return true se il database è già stato inizializzato dalla prima query
      */
-    private void initializeDatabase() throws ClassNotFoundException, SQLException, IOException {
+    boolean isInizializzato() {
+        return pool != null;
+    }
+
+    /**
+     * Inizializza il database: se la risorsa è un file viene aperta direttamente,
+     * altrimenti viene estratta nella directory temporanea. Con la proprietà di sistema
+     * {@value #PROPRIETA_MEMORIA} il contenuto della risorsa viene invece caricato in database
+     * SQLite in memoria, senza scrivere sul file system (utile con directory temporanee
+     * in sola lettura) e con latenze delle query più basse.
+     * Il driver SQLite estrae comunque la propria libreria nativa: se la directory temporanea
+     * è montata noexec, indicarne un'altra con la proprietà di sistema {@code org.sqlite.tmpdir}.
+     *
+     * @return Il pool di connessioni al database
+     */
+    private PoolConnessioni initializeDatabase() throws ClassNotFoundException, SQLException, IOException {
         // Carica il driver JDBC di SQLite
         Class.forName("org.sqlite.JDBC");
 
-        // Verifica se il database esiste già nella directory temporanea
-        File dbFile = new File(DB_TEMP_PATH);
+        URL risorsa = DatabaseManager.class.getResource(DB_RESOURCE_PATH);
+        if (risorsa == null) {
+            throw new IOException("Database non trovato nelle risorse: " + DB_RESOURCE_PATH);
+        }
+        int connessioni = Integer.getInteger(PROPRIETA_CONNESSIONI, CONNESSIONI_PREDEFINITE);
+        if (Boolean.getBoolean(PROPRIETA_MEMORIA)) {
+            return PoolConnessioni.inMemoria(leggiRisorsa(risorsa), connessioni);
+        }
 
-        // Se il file non esiste o è vuoto, copialo dalle risorse
-        if (!dbFile.exists() || dbFile.length() == 0) {
-            copyDatabaseFromResources(dbFile);
+        Path dbFile = fileRisorsa(risorsa);
+        if (dbFile == null) {
+            dbFile = estraiDatabase(risorsa, Paths.get(DB_TEMP_DIR));
         }
 
-        // Crea la connessione al database
-        connection = DriverManager.getConnection("jdbc:sqlite:" + DB_TEMP_PATH);
+        // Crea il pool di connessioni al database (in sola lettura: il file delle risorse non viene modificato)
+        return new PoolConnessioni("jdbc:sqlite:" + dbFile, connessioni);
     }
 
     /**
-     * Copia il database dalle risorse alla directory temporanea.
+     * @return Il percorso del file se la risorsa è su disco (es. classpath di sviluppo), altrimenti null
      */
-    private void copyDatabaseFromResources(File dbFile) throws IOException {
-        try (InputStream inputStream = getClass().getResourceAsStream(DB_RESOURCE_PATH)) {
-            if (inputStream == null) {
-                throw new IOException("Database non trovato nelle risorse: " + DB_RESOURCE_PATH);
-            }
+    private static Path fileRisorsa(URL risorsa) {
+        if (!"file".equals(risorsa.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(risorsa.toURI());
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
 
-            // Crea la directory temporanea se non esiste
-            File parentDir = dbFile.getParentFile();
-            if (!parentDir.exists()) {
-                parentDir.mkdirs();
+    /**
+     * Estrae il database nella directory indicata, in un file il cui nome contiene l'impronta del contenuto.
+     * Se il file esiste già viene riusato. L'estrazione avviene in un file temporaneo rinominato
+     * atomicamente, sotto un lock sul file che esclude le estrazioni concorrenti di altre JVM:
+     * il file con il nome finale, se esiste, è quindi sempre completo.
+     *
+     * @param risorsa La risorsa del database
+     * @param directory La directory di destinazione
+     * @return Il percorso del database estratto
+     * @throws IOException Se la risorsa non può essere letta o il file non può essere scritto
+     */
+    static Path estraiDatabase(URL risorsa, Path directory) throws IOException {
+        byte[] contenuto = leggiRisorsa(risorsa);
+        Path destinazione = directory.resolve(DB_TEMP_PREFISSO + impronta(contenuto) + ".db");
+        if (isEstratto(destinazione, contenuto.length)) {
+            return destinazione;
+        }
+
+        Files.createDirectories(directory);
+        Path fileLock = directory.resolve(destinazione.getFileName() + ".lock");
+        synchronized (LOCK_ESTRAZIONE) {
+            try (FileChannel canale = FileChannel.open(fileLock, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                // Lock tra processi, rilasciato prima della chiusura del canale
+                FileLock lock = canale.lock();
+                try {
+                    // Un'altra JVM potrebbe aver completato l'estrazione durante l'attesa del lock
+                    if (!isEstratto(destinazione, contenuto.length)) {
+                        Path temporaneo = Files.createTempFile(directory, DB_TEMP_PREFISSO, ".tmp");
+                        try {
+                            Files.write(temporaneo, contenuto);
+                            leggibileDaTutti(temporaneo);
+                            try {
+                                Files.move(temporaneo, destinazione, StandardCopyOption.ATOMIC_MOVE);
+                            } catch (AtomicMoveNotSupportedException e) {
+                                Files.move(temporaneo, destinazione, StandardCopyOption.REPLACE_EXISTING);
+                            }
+                        } finally {
+                            Files.deleteIfExists(temporaneo);
+                        }
+                    }
+                } finally {
+                    lock.release();
+                }
             }
+        }
+        return destinazione;
+    }
+
+    /**
+     * I file temporanei sono leggibili solo dal proprietario: il database estratto viene reso leggibile
+     * anche dalle JVM di altri utenti che condividono la directory temporanea.
+     */
+    private static void leggibileDaTutti(Path file) throws IOException {
+        try {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-r--r--"));
+        } catch (UnsupportedOperationException e) {
+            // File system non POSIX
+        }
+    }
+
+    private static byte[] leggiRisorsa(URL risorsa) throws IOException {
+        try (InputStream inputStream = risorsa.openStream()) {
+            return inputStream.readAllBytes();
+        }
+    }
 
-            // Copia il file
-            Files.copy(inputStream, dbFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    private static boolean isEstratto(Path file, long dimensione) throws IOException {
+        return Files.isRegularFile(file) && Files.size(file) == dimensione;
+    }
+
+    /**
+     * @return I primi byte dell'impronta SHA-256 del contenuto, in esadecimale
+     */
+    private static String impronta(byte[] contenuto) {
+        byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256").digest(contenuto);
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 è disponibile in tutte le JVM
+            throw new IllegalStateException(e);
+        }
+        StringBuilder sb = new StringBuilder(BYTE_IMPRONTA * 2);
+        for (int i = 0; i < BYTE_IMPRONTA; i++) {
+            sb.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
         }
+        return sb.toString();
     }
 
     /**
@@ -116,27 +350,27 @@ public class DatabaseManager {
         }
 
         // Normalizza gli input
-        String provinciaFormattata = siglaProvincia.toUpperCase().trim();
-        String denominazioneFormattata = denominazione.toUpperCase().trim();
+        String provinciaFormattata = siglaProvincia.toUpperCase(Locale.ROOT).trim();
+        String denominazioneFormattata = denominazione.toUpperCase(Locale.ROOT).trim();
 
         // Chiave per la cache
         String chiaveCache = provinciaFormattata + "|" + denominazioneFormattata;
 
         // Controlla nella cache
-        if (codiciCache.containsKey(chiaveCache)) {
-            return codiciCache.get(chiaveCache);
+        AscoltatoreMetriche ascoltatore = Metriche.getAscoltatore();
+        long inizio = ascoltatore != null ? System.nanoTime() : 0;
+        String codiceInCache = codiciCache.cerca(chiaveCache);
+        if (codiceInCache != null) {
+            if (ascoltatore != null) {
+                ascoltatore.ricercaCodiceBelfiore(true, System.nanoTime() - inizio);
+            }
+            return codiceInCache.equals(CacheCodici.NESSUN_CODICE) ? null : codiceInCache;
         }
 
-        // Query SQL
-        // La query cerca solo corrispondenze esatte
-        // e ordina per data_inizio_validita in modo da ottenere il codice più recente
-        String sql = "SELECT codice_belfiore FROM comuni_nazioni " +
-                "WHERE UPPER(sigla_provincia) = ? " +
-                "AND UPPER(denominazione_ita) = ? " +
-                "ORDER BY data_inizio_validita DESC " +
-                "LIMIT 1";
-
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
+        PoolConnessioni pool = pool();
+        ConnessioneLettura connessione = pool.acquisisci();
+        try {
+            PreparedStatement stmt = connessione.prepara(SQL_CODICE_BELFIORE);
             stmt.setString(1, provinciaFormattata);
             stmt.setString(2, denominazioneFormattata);
 
@@ -144,46 +378,307 @@ public class DatabaseManager {
                 String codiceBelfiore = rs.next() ? rs.getString("codice_belfiore") : null;
 
                 // Salva il risultato nella cache
-                codiciCache.put(chiaveCache, codiceBelfiore);
+                codiciCache.memorizza(chiaveCache, codiceBelfiore);
+                if (ascoltatore != null) {
+                    ascoltatore.ricercaCodiceBelfiore(false, System.nanoTime() - inizio);
+                }
 
                 return codiceBelfiore;
             }
+        } finally {
+            pool.rilascia(connessione);
         }
     }
 
     /**
-     * Verifica se un codice belfiore è valido (esiste nel database).
+     * Ottiene i codici belfiore di più comuni o nazioni. I luoghi non presenti in cache sono cercati
+     * con una query ogni {@value #LUOGHI_PER_QUERY} luoghi distinti invece che con una query ciascuno,
+     * e i risultati (compresi quelli mancanti) vengono memorizzati in cache.
+     * Per ogni luogo vale lo stesso codice di {@link #getCodiceBelfiore(String, String)}.
      *
-     * @param codiceBelfiore Il codice belfiore da verificare
-     * @return true se il codice esiste, false altrimenti
+     * @param luoghi I luoghi da cercare (i duplicati sono cercati una sola volta)
+     * @return I codici belfiore per luogo; i luoghi non trovati non sono presenti
      * @throws SQLException Se si verifica un errore nella query
      */
-    public boolean isCodiceBelfioreValido(String codiceBelfiore) throws SQLException {
-        if (codiceBelfiore == null) {
-            return false;
+    public Map<LuogoNascita, String> getCodiciBelfiore(Collection<LuogoNascita> luoghi) throws SQLException {
+        Map<LuogoNascita, String> codici = new HashMap<>();
+        Set<LuogoNascita> cercati = new HashSet<>();
+        List<LuogoNascita> mancanti = new ArrayList<>();
+        AscoltatoreMetriche ascoltatore = Metriche.getAscoltatore();
+        for (LuogoNascita luogo : luoghi) {
+            if (!cercati.add(luogo)) {
+                continue;
+            }
+            long inizio = ascoltatore != null ? System.nanoTime() : 0;
+            String codiceInCache = codiciCache.cerca(luogo.chiave());
+            if (codiceInCache == null) {
+                mancanti.add(luogo);
+                continue;
+            }
+            if (!codiceInCache.equals(CacheCodici.NESSUN_CODICE)) {
+                codici.put(luogo, codiceInCache);
+            }
+            // Un evento per luogo, come getCodiceBelfiore
+            if (ascoltatore != null) {
+                ascoltatore.ricercaCodiceBelfiore(true, System.nanoTime() - inizio);
+            }
+        }
+        if (mancanti.isEmpty()) {
+            return codici;
         }
 
-        String codiceFormattato = codiceBelfiore.toUpperCase().trim();
+        PoolConnessioni pool = pool();
+        ConnessioneLettura connessione = pool.acquisisci();
+        try {
+            PreparedStatement stmt = connessione.prepara(SQL_CODICI_BELFIORE);
+            Map<String, String> trovati = new HashMap<>();
+            for (int da = 0; da < mancanti.size(); da += LUOGHI_PER_QUERY) {
+                long inizio = ascoltatore != null ? System.nanoTime() : 0;
+                int a = Math.min(da + LUOGHI_PER_QUERY, mancanti.size());
+                for (int i = 0; i < LUOGHI_PER_QUERY; i++) {
+                    LuogoNascita luogo = mancanti.get(Math.min(da + i, a - 1));
+                    stmt.setString(2 * i + 1, luogo.getSiglaProvincia());
+                    stmt.setString(2 * i + 2, luogo.getDenominazione());
+                }
+
+                // Le righe sono in ordine crescente di validità: per ogni luogo resta il codice più recente
+                trovati.clear();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        trovati.put(rs.getString(1) + "|" + rs.getString(2), rs.getString(3));
+                    }
+                }
+
+                for (LuogoNascita luogo : mancanti.subList(da, a)) {
+                    String codiceBelfiore = trovati.get(luogo.chiave());
+                    codiciCache.memorizza(luogo.chiave(), codiceBelfiore);
+                    if (codiceBelfiore != null) {
+                        codici.put(luogo, codiceBelfiore);
+                    }
+                }
+                if (ascoltatore != null) {
+                    // La durata della query è ripartita tra i luoghi cercati, con un evento per luogo
+                    long durataPerLuogo = (System.nanoTime() - inizio) / (a - da);
+                    for (int i = da; i < a; i++) {
+                        ascoltatore.ricercaCodiceBelfiore(false, durataPerLuogo);
+                    }
+                }
+            }
+        } finally {
+            pool.rilascia(connessione);
+        }
+        return codici;
+    }
 
-        // Controlla nella cache
-        if (validitaCache.containsKey(codiceFormattato)) {
-            return validitaCache.get(codiceFormattato);
+    /**
+     * Ottiene il codice belfiore che un comune o nazione aveva in una data.
+     * A differenza di {@link #getCodiceBelfiore(String, String)}, che restituisce il codice più recente,
+     * tiene conto degli intervalli di validità: per chi è nato in un comune prima di una ricostituzione
+     * o di una fusione restituisce il codice in vigore alla data di nascita.
+     * La ricerca usa un indice in memoria, costruito con una sola query alla prima chiamata.
+     * Non passa dalla cache di {@link #getStatisticheCache()}: per le metriche ogni ricerca è una ricerca
+     * in memoria, tranne quella che carica l'indice.
+     *
+     * @param siglaProvincia Sigla della provincia (o EE per l'estero)
+     * @param denominazione Nome del comune o della nazione
+     * @param data La data (es. di nascita); se null si comporta come {@link #getCodiceBelfiore(String, String)}
+     * @return Il codice belfiore valido nella data, o null se non trovato o non valido in quella data
+     * @throws SQLException Se si verifica un errore nel caricamento dell'indice
+     */
+    public String getCodiceBelfiore(String siglaProvincia, String denominazione, LocalDate data) throws SQLException {
+        if (data == null) {
+            return getCodiceBelfiore(siglaProvincia, denominazione);
+        }
+        if (siglaProvincia == null || denominazione == null) {
+            return null;
         }
 
-        String sql = "SELECT 1 FROM comuni_nazioni WHERE codice_belfiore = ? LIMIT 1";
+        AscoltatoreMetriche ascoltatore = Metriche.getAscoltatore();
+        long inizio = ascoltatore != null ? System.nanoTime() : 0;
+        boolean inMemoria = indiceValidita != null;
+        String chiave = siglaProvincia.toUpperCase(Locale.ROOT).trim() + "|" + denominazione.toUpperCase(Locale.ROOT).trim();
+        String codiceBelfiore = getIndiceValidita().cerca(chiave, data.toEpochDay());
+        if (ascoltatore != null) {
+            ascoltatore.ricercaCodiceBelfiore(inMemoria, System.nanoTime() - inizio);
+        }
+        return codiceBelfiore;
+    }
 
-        try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-            stmt.setString(1, codiceFormattato);
+    private IndiceValidita getIndiceValidita() throws SQLException {
+        IndiceValidita indice = indiceValidita;
+        if (indice == null) {
+            synchronized (this) {
+                indice = indiceValidita;
+                if (indice == null) {
+                    PoolConnessioni pool = pool();
+                    ConnessioneLettura connessione = pool.acquisisci();
+                    try {
+                        indice = IndiceValidita.carica(connessione.getConnection());
+                    } finally {
+                        pool.rilascia(connessione);
+                    }
+                    indiceValidita = indice;
+                }
+            }
+        }
+        return indice;
+    }
 
-            try (ResultSet rs = stmt.executeQuery()) {
-                boolean isValido = rs.next();
+    /**
+     * Cerca i comuni o le nazioni con la denominazione più simile a quella indicata, per gli input
+     * che non corrispondono esattamente al database (es. "S. Giovanni Rotondo" invece di
+     * "SAN GIOVANNI ROTONDO", "Canicattì" invece di "CANICATTI'", errori di battitura).
+     * La ricerca usa un indice dei trigrammi in memoria, costruito con una sola query alla prima chiamata,
+     * e non esegue query.
+     *
+     * @param siglaProvincia Sigla della provincia in cui cercare (o EE per l'estero), o null per tutte
+     * @param denominazione Nome del comune o della nazione, anche approssimato
+     * @param massimo Il numero massimo di risultati
+     * @return I luoghi più simili, dal più simile; vuota se nessuno è abbastanza simile
+     * @throws SQLException Se si verifica un errore nel caricamento dell'indice
+     */
+    public List<LuogoNascita> cercaLuoghiSimili(String siglaProvincia, String denominazione, int massimo)
+            throws SQLException {
+        if (denominazione == null) {
+            return new ArrayList<>();
+        }
 
-                // Salva il risultato nella cache
-                validitaCache.put(codiceFormattato, isValido);
+        String provincia = siglaProvincia != null ? siglaProvincia.toUpperCase(Locale.ROOT).trim() : null;
+        List<LuogoNascita> luoghi = new ArrayList<>();
+        for (IndiceTrigrammi.Corrispondenza corrispondenza : getIndiceTrigrammi().cerca(provincia, denominazione, massimo)) {
+            luoghi.add(corrispondenza.getLuogo());
+        }
+        return luoghi;
+    }
 
-                return isValido;
+    /**
+     * Cerca il comune o la nazione della provincia con la denominazione più simile a quella indicata,
+     * come {@link #cercaLuoghiSimili(String, String, int)}, solo se non è ambiguo: se due luoghi
+     * sono ugualmente simili non ne restituisce nessuno.
+     *
+     * @param siglaProvincia Sigla della provincia (o EE per l'estero)
+     * @param denominazione Nome del comune o della nazione, anche approssimato
+     * @return Il luogo più simile, o null se nessun luogo è abbastanza simile o la scelta è ambigua
+     * @throws SQLException Se si verifica un errore nel caricamento dell'indice
+     */
+    public LuogoNascita trovaLuogoSimile(String siglaProvincia, String denominazione) throws SQLException {
+        if (siglaProvincia == null || denominazione == null) {
+            return null;
+        }
+
+        List<IndiceTrigrammi.Corrispondenza> corrispondenze =
+                getIndiceTrigrammi().cerca(siglaProvincia.toUpperCase(Locale.ROOT).trim(), denominazione, 2);
+        if (corrispondenze.isEmpty() || (corrispondenze.size() > 1
+                && corrispondenze.get(1).getSimilitudine() == corrispondenze.get(0).getSimilitudine())) {
+            return null;
+        }
+        return corrispondenze.get(0).getLuogo();
+    }
+
+    private IndiceTrigrammi getIndiceTrigrammi() throws SQLException {
+        IndiceTrigrammi indice = indiceTrigrammi;
+        if (indice == null) {
+            synchronized (this) {
+                indice = indiceTrigrammi;
+                if (indice == null) {
+                    PoolConnessioni pool = pool();
+                    ConnessioneLettura connessione = pool.acquisisci();
+                    try {
+                        indice = IndiceTrigrammi.carica(connessione.getConnection());
+                    } finally {
+                        pool.rilascia(connessione);
+                    }
+                    indiceTrigrammi = indice;
+                }
+            }
+        }
+        return indice;
+    }
+
+    /**
+     * Restituisce il registro in memoria dei codici belfiore, caricandolo alla prima chiamata.
+     * Il registro viene letto dalla risorsa binaria precalcolata; se non è disponibile
+     * viene costruito interrogando il database.
+     * Il registro è immutabile e può essere interrogato da più thread senza sincronizzazione.
+     *
+     * @return Il registro dei codici belfiore
+     * @throws SQLException Se si verifica un errore nel caricamento
+     */
+    public RegistroBelfiore getRegistroBelfiore() throws SQLException {
+        RegistroBelfiore registro = registroBelfiore;
+        if (registro == null) {
+            synchronized (this) {
+                registro = registroBelfiore;
+                if (registro == null) {
+                    try {
+                        registro = RegistroBelfiore.predefinito();
+                    } catch (IOException e) {
+                        PoolConnessioni pool = pool();
+                        ConnessioneLettura connessione = pool.acquisisci();
+                        try {
+                            registro = RegistroBelfiore.carica(connessione.getConnection());
+                        } finally {
+                            pool.rilascia(connessione);
+                        }
+                    }
+                    registroBelfiore = registro;
+                }
             }
         }
+        return registro;
+    }
+
+    /**
+     * Verifica se un codice belfiore è valido (esiste nel database).
+     * La verifica usa il registro in memoria e non esegue query dopo il primo caricamento.
+     *
+     * @param codiceBelfiore Il codice belfiore da verificare
+     * @return true se il codice esiste, false altrimenti
+     * @throws SQLException Se si verifica un errore nel caricamento del registro
+     */
+    public boolean isCodiceBelfioreValido(String codiceBelfiore) throws SQLException {
+        if (codiceBelfiore == null) {
+            return false;
+        }
+
+        return getRegistroBelfiore().contiene(codiceBelfiore.toUpperCase(Locale.ROOT).trim());
+    }
+
+    /**
+     * Avvia in un thread daemon in background l'inizializzazione completa: copia del database,
+     * apertura delle connessioni, caricamento del registro dei codici belfiore, dell'indice
+     * degli intervalli di validità e caricamento in cache di tutte le denominazioni
+     * (nei limiti della capacità della cache).
+     * Può essere chiamato all'avvio dell'applicazione per evitare la latenza della prima ricerca.
+     *
+     * @return Un future completato al termine del preriscaldamento, o in modo eccezionale in caso di errore
+     */
+    public CompletableFuture<Void> preriscalda() {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                caricaTuttiICodici();
+            } catch (SQLException e) {
+                throw new CompletionException(e);
+            }
+        }, task -> {
+            Thread thread = new Thread(task, "codicefiscale-preriscaldamento");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    private void caricaTuttiICodici() throws SQLException {
+        getRegistroBelfiore();
+        getIndiceValidita();
+        PoolConnessioni pool = pool();
+        ConnessioneLettura connessione = pool.acquisisci();
+        try (ResultSet rs = connessione.prepara(SQL_TUTTI_I_CODICI).executeQuery()) {
+            while (rs.next()) {
+                codiciCache.memorizza(rs.getString(1) + "|" + rs.getString(2), rs.getString(3));
+            }
+        } finally {
+            pool.rilascia(connessione);
+        }
     }
 
     /**
@@ -199,22 +694,37 @@ public class DatabaseManager {
     }
 
     /**
-     * Chiude la connessione al database.
+     * Restituisce i contatori della cache delle ricerche per provincia e denominazione.
+     *
+     * @return Un'istantanea di ricerche trovate e mancate, rimozioni, scadenze e dimensione
+     */
+    public StatisticheCache getStatisticheCache() {
+        return codiciCache.statistiche();
+    }
+
+    /**
+     * Svuota la cache delle ricerche per provincia e denominazione (usato dai benchmark).
+     */
+    void svuotaCache() {
+        codiciCache.svuota();
+    }
+
+    /**
+     * Chiude le connessioni al database.
      */
     public void close() {
-        try {
-            if (connection != null && !connection.isClosed()) {
-                connection.close();
+        synchronized (lockPool) {
+            chiuso = true;
+            if (pool != null) {
+                pool.close();
             }
-        } catch (SQLException e) {
-            // Ignora errori in chiusura
         }
     }
 
     /**
      * Resetta l'istanza singleton (utile per i test).
      */
-    public static void reset() {
+    public static synchronized void reset() {
         if (instance != null) {
             try {
                 instance.close();
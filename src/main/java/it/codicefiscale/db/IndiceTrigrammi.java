@@ -0,0 +1,264 @@
+package it.codicefiscale.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Indice immutabile in memoria dei trigrammi delle denominazioni dei comuni e delle nazioni,
+ * per la ricerca approssimata di denominazioni scritte in modo diverso dal database
+ * (abbreviazioni come "S." per "SAN", accenti al posto degli apostrofi, errori di battitura).
+ *
+ * <p>Le denominazioni sono normalizzate (maiuscolo, senza accenti né punteggiatura, abbreviazioni
+ * espanse) e scomposte nei trigrammi di ciascuna parola, con due spazi prima e uno dopo come in
+ * pg_trgm. Ogni trigramma è codificato in un intero; le liste delle denominazioni che lo contengono
+ * sono memorizzate consecutivamente in un unico array, in ordine di provincia e denominazione.
+ * Una ricerca in una provincia limita per bisezione ogni lista all'intervallo della provincia,
+ * conta i trigrammi in comune e ordina le denominazioni per similitudine di Jaccard
+ * (trigrammi in comune diviso trigrammi complessivi), senza eseguire query.</p>
+ */
+final class IndiceTrigrammi {
+
+    private static final String SQL_DENOMINAZIONI = "SELECT DISTINCT sigla_provincia, denominazione_ita "
+            + "FROM comuni_nazioni ORDER BY sigla_provincia, denominazione_ita";
+
+    // Similitudine minima perché una denominazione sia restituita da cerca
+    static final double SOGLIA_SIMILITUDINE = 0.5;
+
+    // Simboli dei trigrammi: spazio, lettere e cifre
+    private static final int SIMBOLI = 37;
+    private static final int NUMERO_TRIGRAMMI = SIMBOLI * SIMBOLI * SIMBOLI;
+
+    // Abbreviazioni espanse dalla normalizzazione (dopo la rimozione della punteggiatura)
+    private static final Map<String, String> ABBREVIAZIONI = Map.of(
+            "S", "SAN",
+            "STA", "SANTA",
+            "STO", "SANTO",
+            "SS", "SANTI");
+
+    private static final Pattern SEGNI_DIACRITICI = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORI = Pattern.compile("[^A-Z0-9]+");
+
+    // "S.TA" e "S.TO", da unire prima della rimozione della punteggiatura
+    private static final Pattern SANTA_SANTO_PUNTATI = Pattern.compile("\\bS\\.(T[AO])\\b");
+
+    // Luoghi ordinati per provincia e denominazione, con il numero di trigrammi distinti di ciascuno
+    private final LuogoNascita[] luoghi;
+    private final int[] numeriTrigrammi;
+
+    // Province ordinate; i luoghi della provincia p occupano le posizioni [iniziProvince[p], iniziProvince[p + 1])
+    private final String[] province;
+    private final int[] iniziProvince;
+
+    // I luoghi che contengono il trigramma t occupano le posizioni [iniziTrigrammi[t], iniziTrigrammi[t + 1]) di voci
+    private final int[] iniziTrigrammi;
+    private final int[] voci;
+
+    private IndiceTrigrammi(LuogoNascita[] luoghi, int[] numeriTrigrammi, String[] province, int[] iniziProvince,
+                            int[] iniziTrigrammi, int[] voci) {
+        this.luoghi = luoghi;
+        this.numeriTrigrammi = numeriTrigrammi;
+        this.province = province;
+        this.iniziProvince = iniziProvince;
+        this.iniziTrigrammi = iniziTrigrammi;
+        this.voci = voci;
+    }
+
+    /**
+     * Costruisce l'indice leggendo tutte le denominazioni dal database.
+     *
+     * @param connection Una connessione al database dei comuni
+     * @return L'indice caricato
+     * @throws SQLException Se si verifica un errore nella query
+     */
+    static IndiceTrigrammi carica(Connection connection) throws SQLException {
+        List<LuogoNascita> elenco = new ArrayList<>();
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(SQL_DENOMINAZIONI)) {
+            while (rs.next()) {
+                elenco.add(new LuogoNascita(rs.getString(1), rs.getString(2)));
+            }
+        }
+        // L'ordine della query dipende dalla collazione del database: le bisezioni richiedono quello di String
+        elenco.sort(Comparator.comparing(LuogoNascita::getSiglaProvincia).thenComparing(LuogoNascita::getDenominazione));
+
+        LuogoNascita[] luoghi = elenco.toArray(new LuogoNascita[0]);
+        int[][] trigrammi = new int[luoghi.length][];
+        int[] numeriTrigrammi = new int[luoghi.length];
+        int[] iniziTrigrammi = new int[NUMERO_TRIGRAMMI + 1];
+        List<String> province = new ArrayList<>();
+        List<Integer> iniziProvince = new ArrayList<>();
+
+        for (int v = 0; v < luoghi.length; v++) {
+            String provincia = luoghi[v].getSiglaProvincia();
+            if (province.isEmpty() || !province.get(province.size() - 1).equals(provincia)) {
+                province.add(provincia);
+                iniziProvince.add(v);
+            }
+            trigrammi[v] = trigrammi(luoghi[v].getDenominazione());
+            numeriTrigrammi[v] = trigrammi[v].length;
+            for (int t : trigrammi[v]) {
+                iniziTrigrammi[t + 1]++;
+            }
+        }
+        iniziProvince.add(luoghi.length);
+
+        // Liste consecutive: ogni lista resta in ordine di luogo perché i luoghi sono visitati in ordine
+        for (int t = 0; t < NUMERO_TRIGRAMMI; t++) {
+            iniziTrigrammi[t + 1] += iniziTrigrammi[t];
+        }
+        int[] voci = new int[iniziTrigrammi[NUMERO_TRIGRAMMI]];
+        int[] posizioni = Arrays.copyOf(iniziTrigrammi, NUMERO_TRIGRAMMI);
+        for (int v = 0; v < luoghi.length; v++) {
+            for (int t : trigrammi[v]) {
+                voci[posizioni[t]++] = v;
+            }
+        }
+
+        return new IndiceTrigrammi(luoghi, numeriTrigrammi, province.toArray(new String[0]),
+                iniziProvince.stream().mapToInt(Integer::intValue).toArray(), iniziTrigrammi, voci);
+    }
+
+    /**
+     * Cerca le denominazioni più simili a quella indicata.
+     *
+     * @param siglaProvincia La provincia in cui cercare (già normalizzata), o null per tutte
+     * @param denominazione La denominazione cercata, in qualsiasi forma
+     * @param massimo Il numero massimo di risultati
+     * @return I luoghi con similitudine almeno {@value #SOGLIA_SIMILITUDINE}, dal più simile
+     *         (a parità di similitudine in ordine di provincia e denominazione)
+     */
+    List<Corrispondenza> cerca(String siglaProvincia, String denominazione, int massimo) {
+        int da = 0;
+        int a = luoghi.length;
+        if (siglaProvincia != null) {
+            int p = Arrays.binarySearch(province, siglaProvincia);
+            if (p < 0) {
+                return new ArrayList<>();
+            }
+            da = iniziProvince[p];
+            a = iniziProvince[p + 1];
+        }
+
+        int[] cercati = trigrammi(denominazione);
+        if (cercati.length == 0 || massimo <= 0) {
+            return new ArrayList<>();
+        }
+
+        // Trigrammi in comune con ciascun luogo dell'intervallo
+        int[] comuni = new int[a - da];
+        for (int t : cercati) {
+            int fine = iniziTrigrammi[t + 1];
+            int i = Arrays.binarySearch(voci, iniziTrigrammi[t], fine, da);
+            for (i = i < 0 ? -i - 1 : i; i < fine && voci[i] < a; i++) {
+                comuni[voci[i] - da]++;
+            }
+        }
+
+        List<Corrispondenza> corrispondenze = new ArrayList<>();
+        for (int v = da; v < a; v++) {
+            int inComune = comuni[v - da];
+            if (inComune == 0) {
+                continue;
+            }
+            double similitudine = (double) inComune / (cercati.length + numeriTrigrammi[v] - inComune);
+            if (similitudine >= SOGLIA_SIMILITUDINE) {
+                corrispondenze.add(new Corrispondenza(luoghi[v], similitudine));
+            }
+        }
+        // L'ordinamento è stabile: a parità di similitudine resta l'ordine dei luoghi
+        corrispondenze.sort(Comparator.comparingDouble(Corrispondenza::getSimilitudine).reversed());
+        return corrispondenze.size() > massimo ? new ArrayList<>(corrispondenze.subList(0, massimo)) : corrispondenze;
+    }
+
+    /**
+     * @return Il numero di coppie provincia e denominazione indicizzate
+     */
+    int dimensione() {
+        return luoghi.length;
+    }
+
+    /**
+     * Normalizza una denominazione per il confronto: maiuscolo, lettere accentate sostituite dalla lettera
+     * semplice, punteggiatura (compresi gli apostrofi usati al posto degli accenti) sostituita da spazi,
+     * abbreviazioni espanse e spazi compattati. Es. "S. Giovanni Rotondo" diventa "SAN GIOVANNI ROTONDO"
+     * e sia "Canicattì" sia "CANICATTI'" diventano "CANICATTI".
+     */
+    static String normalizza(String denominazione) {
+        String senzaAccenti = SEGNI_DIACRITICI.matcher(Normalizer.normalize(denominazione, Normalizer.Form.NFD))
+                .replaceAll("")
+                .toUpperCase(Locale.ROOT);
+        senzaAccenti = SANTA_SANTO_PUNTATI.matcher(senzaAccenti).replaceAll("S$1");
+        StringBuilder sb = new StringBuilder(senzaAccenti.length());
+        for (String parola : SEPARATORI.split(senzaAccenti)) {
+            if (!parola.isEmpty()) {
+                if (sb.length() > 0) {
+                    sb.append(' ');
+                }
+                sb.append(ABBREVIAZIONI.getOrDefault(parola, parola));
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return I trigrammi distinti della denominazione normalizzata, in ordine crescente
+     */
+    static int[] trigrammi(String denominazione) {
+        String normalizzata = normalizza(denominazione);
+        int[] trigrammi = new int[normalizzata.length() * 2 + 2];
+        int numero = 0;
+        for (String parola : normalizzata.split(" ")) {
+            if (parola.isEmpty()) {
+                continue;
+            }
+            // Due spazi prima e uno dopo la parola: "  R", " RO", "ROM", "OMA", "MA "
+            int primo = 0;
+            int secondo = 0;
+            for (int i = 0; i <= parola.length(); i++) {
+                int terzo = i < parola.length() ? simbolo(parola.charAt(i)) : 0;
+                trigrammi[numero++] = (primo * SIMBOLI + secondo) * SIMBOLI + terzo;
+                primo = secondo;
+                secondo = terzo;
+            }
+        }
+        return Arrays.stream(trigrammi, 0, numero).sorted().distinct().toArray();
+    }
+
+    private static int simbolo(char c) {
+        return c <= '9' ? c - '0' + 27 : c - 'A' + 1;
+    }
+
+    /**
+     * Luogo restituito da una ricerca, con la similitudine alla denominazione cercata.
+     */
+    static final class Corrispondenza {
+        private final LuogoNascita luogo;
+        private final double similitudine;
+
+        private Corrispondenza(LuogoNascita luogo, double similitudine) {
+            this.luogo = luogo;
+            this.similitudine = similitudine;
+        }
+
+        LuogoNascita getLuogo() {
+            return luogo;
+        }
+
+        /**
+         * @return La similitudine di Jaccard dei trigrammi, tra 0 (esclusa) e 1
+         */
+        double getSimilitudine() {
+            return similitudine;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package it.codicefiscale.db;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Indice immutabile in memoria degli intervalli di validità dei codici belfiore
+ * per provincia e denominazione.
+ *
+ * <p>Le chiavi ({@code PROVINCIA|DENOMINAZIONE}) sono ordinate e cercate per bisezione;
+ * gli intervalli di ogni chiave sono ordinati per data di inizio e accompagnati dal massimo
+ * progressivo delle date di fine, come in un albero di intervalli appiattito in array.
+ * Una ricerca per data individua per bisezione l'ultimo intervallo iniziato entro la data
+ * e risale gli intervalli precedenti solo finché il massimo delle date di fine la raggiunge,
+ * quindi non esegue query e non alloca memoria.</p>
+ */
+final class IndiceValidita {
+
+    private static final String SQL_INTERVALLI = "SELECT sigla_provincia, denominazione_ita, codice_belfiore, "
+            + "data_inizio_validita, data_fine_validita FROM comuni_nazioni";
+
+    // A parità di data di inizio vale il codice maggiore, come in DatabaseManager.SQL_CODICE_BELFIORE
+    private static final Comparator<Intervallo> ORDINE = Comparator.<Intervallo>comparingInt(i -> i.inizio)
+            .thenComparing(i -> i.codice);
+
+    // Chiavi ordinate; gli intervalli della chiave k occupano le posizioni [inizi[k], inizi[k + 1])
+    private final String[] chiavi;
+    private final int[] inizi;
+
+    // Intervalli (epoch day, estremi inclusi) ordinati per data di inizio all'interno di ogni chiave
+    private final int[] dateInizio;
+    private final int[] dateFine;
+
+    // Massimo delle date di fine dal primo intervallo della chiave fino alla posizione corrente
+    private final int[] massimiFine;
+    private final String[] codici;
+
+    private IndiceValidita(String[] chiavi, int[] inizi, int[] dateInizio, int[] dateFine,
+                           int[] massimiFine, String[] codici) {
+        this.chiavi = chiavi;
+        this.inizi = inizi;
+        this.dateInizio = dateInizio;
+        this.dateFine = dateFine;
+        this.massimiFine = massimiFine;
+        this.codici = codici;
+    }
+
+    /**
+     * Costruisce l'indice leggendo tutti gli intervalli di validità dal database.
+     *
+     * @param connection Una connessione al database dei comuni
+     * @return L'indice caricato
+     * @throws SQLException Se si verifica un errore nella query
+     */
+    static IndiceValidita carica(Connection connection) throws SQLException {
+        Map<String, List<Intervallo>> intervalli = new TreeMap<>();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery(SQL_INTERVALLI)) {
+            while (rs.next()) {
+                intervalli.computeIfAbsent(rs.getString(1) + "|" + rs.getString(2), k -> new ArrayList<>())
+                        .add(new Intervallo(
+                                RegistroBelfiore.epochDay(rs.getString(4), RegistroBelfiore.INIZIO_INDEFINITO),
+                                RegistroBelfiore.epochDay(rs.getString(5), RegistroBelfiore.FINE_INDEFINITA),
+                                rs.getString(3)));
+            }
+        }
+
+        int totale = 0;
+        for (List<Intervallo> intervalliChiave : intervalli.values()) {
+            totale += intervalliChiave.size();
+        }
+
+        String[] chiavi = new String[intervalli.size()];
+        int[] inizi = new int[intervalli.size() + 1];
+        int[] dateInizio = new int[totale];
+        int[] dateFine = new int[totale];
+        int[] massimiFine = new int[totale];
+        String[] codici = new String[totale];
+
+        int k = 0;
+        int posizione = 0;
+        for (Map.Entry<String, List<Intervallo>> voce : intervalli.entrySet()) {
+            chiavi[k] = voce.getKey();
+            inizi[k++] = posizione;
+            List<Intervallo> intervalliChiave = voce.getValue();
+            intervalliChiave.sort(ORDINE);
+            int massimo = Integer.MIN_VALUE;
+            for (Intervallo intervallo : intervalliChiave) {
+                massimo = Math.max(massimo, intervallo.fine);
+                dateInizio[posizione] = intervallo.inizio;
+                dateFine[posizione] = intervallo.fine;
+                massimiFine[posizione] = massimo;
+                codici[posizione++] = intervallo.codice;
+            }
+        }
+        inizi[k] = posizione;
+
+        return new IndiceValidita(chiavi, inizi, dateInizio, dateFine, massimiFine, codici);
+    }
+
+    /**
+     * Cerca il codice belfiore valido in una data. Se più intervalli contengono la data
+     * vale quello iniziato più di recente.
+     *
+     * @param chiave La chiave normalizzata {@code PROVINCIA|DENOMINAZIONE}
+     * @param epochDay La data, come {@link java.time.LocalDate#toEpochDay()}
+     * @return Il codice belfiore, o null se la chiave non esiste o nessun codice era valido nella data
+     */
+    String cerca(String chiave, long epochDay) {
+        int k = Arrays.binarySearch(chiavi, chiave);
+        if (k < 0) {
+            return null;
+        }
+
+        // Ultimo intervallo con data di inizio non successiva alla data cercata
+        int basso = inizi[k];
+        int alto = inizi[k + 1] - 1;
+        while (basso <= alto) {
+            int medio = (basso + alto) >>> 1;
+            if (dateInizio[medio] <= epochDay) {
+                basso = medio + 1;
+            } else {
+                alto = medio - 1;
+            }
+        }
+
+        for (int i = alto; i >= inizi[k] && massimiFine[i] >= epochDay; i--) {
+            if (dateFine[i] >= epochDay) {
+                return codici[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Il numero di coppie provincia e denominazione indicizzate
+     */
+    int dimensione() {
+        return chiavi.length;
+    }
+
+    private static final class Intervallo {
+        private final int inizio;
+        private final int fine;
+        private final String codice;
+
+        private Intervallo(int inizio, int fine, String codice) {
+            this.inizio = inizio;
+            this.fine = fine;
+            this.codice = codice;
+        }
+    }
+}
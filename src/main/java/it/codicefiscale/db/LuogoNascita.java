@@ -0,0 +1,63 @@
+package it.codicefiscale.db;
+
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Coppia di sigla della provincia e denominazione di un comune o nazione, usata per le ricerche
+ * di più codici belfiore con una sola query ({@link DatabaseManager#getCodiciBelfiore(java.util.Collection)}).
+ * I valori sono normalizzati come in {@link DatabaseManager#getCodiceBelfiore(String, String)}
+ * (maiuscolo, senza spazi iniziali e finali), quindi due luoghi che differiscono solo per
+ * maiuscole o spazi sono uguali. Le istanze sono immutabili.
+ */
+public final class LuogoNascita {
+
+    private final String siglaProvincia;
+    private final String denominazione;
+
+    /**
+     * @param siglaProvincia Sigla della provincia (o EE per l'estero)
+     * @param denominazione Nome del comune o della nazione
+     */
+    public LuogoNascita(String siglaProvincia, String denominazione) {
+        this.siglaProvincia = Objects.requireNonNull(siglaProvincia, "siglaProvincia").toUpperCase(Locale.ROOT).trim();
+        this.denominazione = Objects.requireNonNull(denominazione, "denominazione").toUpperCase(Locale.ROOT).trim();
+    }
+
+    public String getSiglaProvincia() {
+        return siglaProvincia;
+    }
+
+    public String getDenominazione() {
+        return denominazione;
+    }
+
+    /**
+     * @return La chiave usata dalla cache delle ricerche
+     */
+    String chiave() {
+        return siglaProvincia + "|" + denominazione;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LuogoNascita)) {
+            return false;
+        }
+        LuogoNascita altro = (LuogoNascita) o;
+        return siglaProvincia.equals(altro.siglaProvincia) && denominazione.equals(altro.denominazione);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * siglaProvincia.hashCode() + denominazione.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return denominazione + " (" + siglaProvincia + ")";
+    }
+}
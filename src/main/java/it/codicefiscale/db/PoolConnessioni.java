@@ -0,0 +1,157 @@
+package it.codicefiscale.db;
+
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool di dimensione fissa di connessioni SQLite in sola lettura.
+ * Ogni connessione viene usata da un solo thread alla volta: chi la acquisisce
+ * deve restituirla con {@link #rilascia(ConnessioneLettura)} in un blocco finally.
+ */
+final class PoolConnessioni implements AutoCloseable {
+
+    // Tempo massimo di attesa per una connessione libera
+    private static final long ATTESA_MASSIMA_SECONDI = 30;
+
+    // URL JDBC di un database SQLite in memoria, distinto per ogni connessione
+    private static final String URL_MEMORIA = "jdbc:sqlite::memory:";
+
+    private final BlockingQueue<ConnessioneLettura> libere;
+    private final List<ConnessioneLettura> tutte;
+    private volatile boolean chiuso;
+
+    /**
+     * Apre una nuova connessione del pool.
+     */
+    @FunctionalInterface
+    interface ApriConnessione {
+        Connection apri() throws SQLException;
+    }
+
+    /**
+     * Apre {@code dimensione} connessioni in sola lettura al database indicato.
+     *
+     * @param url URL JDBC del database
+     * @param dimensione Numero di connessioni del pool
+     * @throws SQLException Se una connessione non può essere aperta
+     */
+    PoolConnessioni(String url, int dimensione) throws SQLException {
+        this(dimensione, apriInSolaLettura(url));
+    }
+
+    /**
+     * Apre {@code dimensione} connessioni con la funzione indicata.
+     *
+     * @param dimensione Numero di connessioni del pool
+     * @param apriConnessione La funzione che apre ogni connessione, già in sola lettura
+     * @throws SQLException Se una connessione non può essere aperta
+     */
+    PoolConnessioni(int dimensione, ApriConnessione apriConnessione) throws SQLException {
+        if (dimensione < 1) {
+            throw new IllegalArgumentException("Dimensione del pool non valida: " + dimensione);
+        }
+
+        this.libere = new ArrayBlockingQueue<>(dimensione);
+        this.tutte = new ArrayList<>(dimensione);
+        try {
+            for (int i = 0; i < dimensione; i++) {
+                ConnessioneLettura connessione = new ConnessioneLettura(apriConnessione.apri());
+                tutte.add(connessione);
+                libere.add(connessione);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Crea un pool di connessioni a database SQLite in memoria, ognuno inizializzato con
+     * una copia dell'immagine del file di database indicata. Il file system non viene usato.
+     *
+     * @param immagine Il contenuto di un file di database SQLite
+     * @param dimensione Numero di connessioni del pool
+     * @throws SQLException Se una connessione non può essere aperta o l'immagine non è valida
+     */
+    static PoolConnessioni inMemoria(byte[] immagine, int dimensione) throws SQLException {
+        return new PoolConnessioni(dimensione, () -> {
+            SQLiteConnection connection = (SQLiteConnection) DriverManager.getConnection(URL_MEMORIA);
+            try {
+                // Ogni connessione ha il proprio database: nessuna contesa sulla cache condivisa
+                connection.deserialize("main", immagine);
+                try (Statement stmt = connection.createStatement()) {
+                    stmt.execute("PRAGMA query_only = ON");
+                }
+                return connection;
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+        });
+    }
+
+    private static ApriConnessione apriInSolaLettura(String url) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        return () -> DriverManager.getConnection(url, config.toProperties());
+    }
+
+    /**
+     * Acquisisce una connessione libera, attendendo se sono tutte in uso.
+     *
+     * @return Una connessione da restituire con {@link #rilascia(ConnessioneLettura)}
+     * @throws SQLException Se il pool è chiuso, l'attesa scade o il thread viene interrotto
+     */
+    ConnessioneLettura acquisisci() throws SQLException {
+        if (chiuso) {
+            throw new SQLException("Il pool di connessioni è chiuso");
+        }
+        try {
+            ConnessioneLettura connessione = libere.poll(ATTESA_MASSIMA_SECONDI, TimeUnit.SECONDS);
+            if (connessione == null) {
+                throw new SQLException("Nessuna connessione disponibile entro "
+                        + ATTESA_MASSIMA_SECONDI + " secondi");
+            }
+            return connessione;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Attesa di una connessione interrotta", e);
+        }
+    }
+
+    /**
+     * Restituisce al pool una connessione acquisita con {@link #acquisisci()}.
+     */
+    void rilascia(ConnessioneLettura connessione) {
+        libere.offer(connessione);
+    }
+
+    /**
+     * @return Il numero di connessioni del pool
+     */
+    int dimensione() {
+        return tutte.size();
+    }
+
+    /**
+     * Chiude tutte le connessioni del pool.
+     */
+    @Override
+    public void close() {
+        chiuso = true;
+        for (ConnessioneLettura connessione : tutte) {
+            connessione.close();
+        }
+        libere.clear();
+    }
+}
@@ -0,0 +1,375 @@
+package it.codicefiscale.db;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Registro immutabile in memoria dei codici belfiore presenti nel database.
+ * Viene caricato una sola volta e risponde senza accedere al database:
+ * ogni verifica è la lettura di un bit in un array, quindi il registro può essere
+ * condiviso senza sincronizzazione da qualsiasi numero di thread.
+ *
+ * <p>Un codice belfiore (una lettera seguita da tre cifre) può essere rappresentato
+ * impacchettato in un {@code int}, un carattere ASCII per byte a partire dal più significativo:
+ * ad esempio "H501" diventa {@code 'H' << 24 | '5' << 16 | '0' << 8 | '1'}.</p>
+ *
+ * <p>La bitmap dei codici, insieme al rango calcolato per ogni parola, costituisce una funzione
+ * hash perfetta minimale: ogni codice presente ha un indice denso tra 0 e {@link #dimensione()} - 1,
+ * usato per accedere agli intervalli di validità del codice. Il registro può essere salvato
+ * in un file binario compatto ({@link #scrivi(OutputStream)}), generato da {@link DatabaseInitializer}
+ * e incluso nelle risorse, e ricaricato senza driver SQLite ({@link #predefinito()}).</p>
+ */
+public final class RegistroBelfiore {
+
+    // Risorsa binaria con il registro precalcolato
+    static final String REGISTRO_RESOURCE_PATH = "/database/belfiore.bin";
+
+    // Intestazione del file binario: "CFBR" e versione del formato
+    private static final int MAGIC = 0x43464252;
+    private static final int VERSIONE = 1;
+
+    // Numero di codici possibili: 26 lettere per 1000 combinazioni di cifre
+    private static final int CAPACITA = 26 * 1000;
+    private static final int PAROLE = (CAPACITA + 63) / 64;
+
+    // Estremi usati per gli intervalli di validità senza data di inizio o di fine
+    static final int INIZIO_INDEFINITO = Integer.MIN_VALUE;
+    static final int FINE_INDEFINITA = Integer.MAX_VALUE;
+
+    private static final DateTimeFormatter FORMATO_DATA = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    // Istanza caricata dalla risorsa binaria
+    private static volatile RegistroBelfiore predefinito;
+
+    // Un bit per ogni codice possibile, indicizzato da indice(codice)
+    private final long[] presenti;
+
+    // Numero di codici presenti nelle parole precedenti a ciascuna parola della bitmap
+    private final int[] rango;
+
+    // Intervalli di validità (epoch day) del codice di indice denso k: posizioni [inizi[k], inizi[k + 1])
+    private final int[] inizi;
+    private final int[] dateInizio;
+    private final int[] dateFine;
+
+    private RegistroBelfiore(long[] presenti, int[] inizi, int[] dateInizio, int[] dateFine) {
+        this.presenti = presenti;
+        this.rango = new int[presenti.length];
+        int conteggio = 0;
+        for (int i = 0; i < presenti.length; i++) {
+            rango[i] = conteggio;
+            conteggio += Long.bitCount(presenti[i]);
+        }
+        if (inizi.length != conteggio + 1) {
+            throw new IllegalArgumentException("Numero di codici incoerente: " + conteggio + " / " + (inizi.length - 1));
+        }
+        this.inizi = inizi;
+        this.dateInizio = dateInizio;
+        this.dateFine = dateFine;
+    }
+
+    /**
+     * Carica il registro leggendo tutti i codici belfiore e i relativi intervalli di validità dal database.
+     *
+     * @param connection Connessione al database dei comuni e nazioni
+     * @return Il registro caricato
+     * @throws SQLException Se si verifica un errore nella query
+     */
+    static RegistroBelfiore carica(Connection connection) throws SQLException {
+        // Intervalli per indice del codice, in ordine di indice
+        Map<Integer, List<int[]>> intervalli = new TreeMap<>();
+
+        try (Statement stmt = connection.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT codice_belfiore, data_inizio_validita, data_fine_validita "
+                     + "FROM comuni_nazioni")) {
+            while (rs.next()) {
+                int indice = indice(impacchetta(rs.getString(1)));
+                if (indice >= 0) {
+                    intervalli.computeIfAbsent(indice, k -> new ArrayList<>()).add(new int[]{
+                            epochDay(rs.getString(2), INIZIO_INDEFINITO),
+                            epochDay(rs.getString(3), FINE_INDEFINITA)
+                    });
+                }
+            }
+        }
+
+        long[] presenti = new long[PAROLE];
+        int[] inizi = new int[intervalli.size() + 1];
+        List<int[]> tutti = new ArrayList<>();
+        int k = 0;
+        for (Map.Entry<Integer, List<int[]>> voce : intervalli.entrySet()) {
+            int indice = voce.getKey();
+            presenti[indice >>> 6] |= 1L << indice;
+            inizi[k++] = tutti.size();
+            List<int[]> intervalliCodice = voce.getValue();
+            intervalliCodice.sort((a, b) -> Integer.compare(a[0], b[0]));
+            tutti.addAll(intervalliCodice);
+        }
+        inizi[k] = tutti.size();
+
+        int[] dateInizio = new int[tutti.size()];
+        int[] dateFine = new int[tutti.size()];
+        for (int i = 0; i < tutti.size(); i++) {
+            dateInizio[i] = tutti.get(i)[0];
+            dateFine[i] = tutti.get(i)[1];
+        }
+
+        return new RegistroBelfiore(presenti, inizi, dateInizio, dateFine);
+    }
+
+    /**
+     * Restituisce il registro precalcolato incluso nelle risorse, caricandolo alla prima chiamata.
+     * Non richiede il driver SQLite né la copia del database su disco.
+     *
+     * @return Il registro dei codici belfiore
+     * @throws IOException Se la risorsa non è disponibile o non è valida
+     */
+    public static RegistroBelfiore predefinito() throws IOException {
+        RegistroBelfiore registro = predefinito;
+        if (registro == null) {
+            synchronized (RegistroBelfiore.class) {
+                registro = predefinito;
+                if (registro == null) {
+                    registro = caricaRisorsa();
+                    predefinito = registro;
+                }
+            }
+        }
+        return registro;
+    }
+
+    /**
+     * Legge la risorsa binaria: se si trova su file system viene mappata in memoria,
+     * altrimenti (ad esempio dentro un JAR) viene letta in un buffer.
+     */
+    private static RegistroBelfiore caricaRisorsa() throws IOException {
+        URL url = RegistroBelfiore.class.getResource(REGISTRO_RESOURCE_PATH);
+        if (url == null) {
+            throw new IOException("Registro non trovato nelle risorse: " + REGISTRO_RESOURCE_PATH);
+        }
+
+        if ("file".equals(url.getProtocol())) {
+            try {
+                Path file = Paths.get(url.toURI());
+                try (FileChannel canale = FileChannel.open(file, StandardOpenOption.READ)) {
+                    return leggi(canale.map(FileChannel.MapMode.READ_ONLY, 0, canale.size()));
+                }
+            } catch (URISyntaxException e) {
+                // Prosegue con la lettura come stream
+            }
+        }
+
+        try (InputStream inputStream = url.openStream()) {
+            return leggi(ByteBuffer.wrap(inputStream.readAllBytes()));
+        }
+    }
+
+    /**
+     * Ricostruisce un registro dal formato binario prodotto da {@link #scrivi(OutputStream)}.
+     *
+     * @param buffer Il buffer con il contenuto del file (big-endian)
+     * @return Il registro letto
+     * @throws IOException Se il contenuto non è un registro valido
+     */
+    static RegistroBelfiore leggi(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Il file non contiene un registro dei codici belfiore");
+            }
+            int versione = buffer.getInt();
+            if (versione != VERSIONE) {
+                throw new IOException("Versione del registro non supportata: " + versione);
+            }
+
+            long[] presenti = new long[PAROLE];
+            buffer.asLongBuffer().get(presenti);
+            buffer.position(buffer.position() + PAROLE * Long.BYTES);
+
+            int[] inizi = new int[buffer.getInt() + 1];
+            int numeroIntervalli = buffer.getInt();
+            leggiInteri(buffer, inizi);
+            int[] dateInizio = leggiInteri(buffer, new int[numeroIntervalli]);
+            int[] dateFine = leggiInteri(buffer, new int[numeroIntervalli]);
+
+            return new RegistroBelfiore(presenti, inizi, dateInizio, dateFine);
+        } catch (RuntimeException e) {
+            throw new IOException("Registro dei codici belfiore non valido: " + e.getMessage(), e);
+        }
+    }
+
+    private static int[] leggiInteri(ByteBuffer buffer, int[] destinazione) {
+        buffer.asIntBuffer().get(destinazione);
+        buffer.position(buffer.position() + destinazione.length * Integer.BYTES);
+        return destinazione;
+    }
+
+    /**
+     * Scrive il registro nel formato binario: intestazione, bitmap dei codici,
+     * numero di codici e di intervalli, indici di inizio degli intervalli e date di inizio e fine.
+     *
+     * @param out Lo stream di destinazione (non viene chiuso)
+     * @throws IOException Se si verifica un errore di scrittura
+     */
+    void scrivi(OutputStream out) throws IOException {
+        DataOutputStream dati = new DataOutputStream(out);
+        dati.writeInt(MAGIC);
+        dati.writeInt(VERSIONE);
+        for (long parola : presenti) {
+            dati.writeLong(parola);
+        }
+        dati.writeInt(dimensione());
+        dati.writeInt(dateInizio.length);
+        for (int valore : inizi) {
+            dati.writeInt(valore);
+        }
+        for (int valore : dateInizio) {
+            dati.writeInt(valore);
+        }
+        for (int valore : dateFine) {
+            dati.writeInt(valore);
+        }
+        dati.flush();
+    }
+
+    /**
+     * Verifica se un codice belfiore impacchettato è presente nel registro.
+     *
+     * @param codiceBelfiore Il codice impacchettato (vedi descrizione della classe)
+     * @return true se il codice esiste, false altrimenti
+     */
+    public boolean contiene(int codiceBelfiore) {
+        int indice = indice(codiceBelfiore);
+        return indice >= 0 && (presenti[indice >>> 6] & (1L << indice)) != 0;
+    }
+
+    /**
+     * Verifica se un codice belfiore è presente nel registro.
+     *
+     * @param codiceBelfiore Il codice belfiore (maiuscolo, es. "H501")
+     * @return true se il codice esiste, false altrimenti
+     */
+    public boolean contiene(CharSequence codiceBelfiore) {
+        return contiene(impacchetta(codiceBelfiore));
+    }
+
+    /**
+     * Verifica se un codice belfiore impacchettato era valido in una data, secondo gli intervalli
+     * di validità del database (estremi inclusi; date assenti = intervallo aperto).
+     * Gli intervalli di ogni codice sono ordinati per data di inizio e sono pochi,
+     * quindi la verifica è una breve scansione senza allocazioni.
+     *
+     * @param codiceBelfiore Il codice impacchettato
+     * @param epochDay La data, come {@link LocalDate#toEpochDay()}
+     * @return true se il codice esiste ed era valido nella data indicata
+     */
+    public boolean isValido(int codiceBelfiore, long epochDay) {
+        int k = indiceDenso(codiceBelfiore);
+        if (k < 0) {
+            return false;
+        }
+        for (int i = inizi[k]; i < inizi[k + 1] && dateInizio[i] <= epochDay; i++) {
+            if (epochDay <= dateFine[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Verifica se un codice belfiore era valido in una data.
+     *
+     * @param codiceBelfiore Il codice belfiore (maiuscolo, es. "H501")
+     * @param data La data
+     * @return true se il codice esiste ed era valido nella data indicata
+     */
+    public boolean isValido(CharSequence codiceBelfiore, LocalDate data) {
+        return isValido(impacchetta(codiceBelfiore), data.toEpochDay());
+    }
+
+    /**
+     * Restituisce l'indice denso del codice (hash perfetto minimale).
+     *
+     * @param codiceBelfiore Il codice impacchettato
+     * @return Un indice tra 0 e {@link #dimensione()} - 1, o -1 se il codice non è presente
+     */
+    public int indiceDenso(int codiceBelfiore) {
+        int indice = indice(codiceBelfiore);
+        if (indice < 0) {
+            return -1;
+        }
+        long parola = presenti[indice >>> 6];
+        long bit = 1L << indice;
+        if ((parola & bit) == 0) {
+            return -1;
+        }
+        return rango[indice >>> 6] + Long.bitCount(parola & (bit - 1));
+    }
+
+    /**
+     * @return Il numero di codici belfiore distinti nel registro
+     */
+    public int dimensione() {
+        return inizi.length - 1;
+    }
+
+    /**
+     * Impacchetta un codice belfiore testuale in un int.
+     *
+     * @param codiceBelfiore Il codice di 4 caratteri
+     * @return Il codice impacchettato, o 0 se la lunghezza non è 4
+     */
+    public static int impacchetta(CharSequence codiceBelfiore) {
+        if (codiceBelfiore == null || codiceBelfiore.length() != 4) {
+            return 0;
+        }
+        return (codiceBelfiore.charAt(0) & 0xFF) << 24
+                | (codiceBelfiore.charAt(1) & 0xFF) << 16
+                | (codiceBelfiore.charAt(2) & 0xFF) << 8
+                | (codiceBelfiore.charAt(3) & 0xFF);
+    }
+
+    /**
+     * Calcola la posizione del codice nell'array di bit.
+     *
+     * @return L'indice (0 - 25999), o -1 se il codice non ha la forma lettera + tre cifre
+     */
+    private static int indice(int codiceBelfiore) {
+        int lettera = (codiceBelfiore >>> 24) - 'A';
+        int c1 = ((codiceBelfiore >>> 16) & 0xFF) - '0';
+        int c2 = ((codiceBelfiore >>> 8) & 0xFF) - '0';
+        int c3 = (codiceBelfiore & 0xFF) - '0';
+        if (lettera < 0 || lettera >= 26 || c1 < 0 || c1 > 9 || c2 < 0 || c2 > 9 || c3 < 0 || c3 > 9) {
+            return -1;
+        }
+        return lettera * 1000 + c1 * 100 + c2 * 10 + c3;
+    }
+
+    /**
+     * Converte una data "dd/MM/yyyy" del database in epoch day.
+     */
+    static int epochDay(String data, int predefinito) {
+        if (data == null || data.trim().isEmpty()) {
+            return predefinito;
+        }
+        return (int) LocalDate.parse(data.trim(), FORMATO_DATA).toEpochDay();
+    }
+}
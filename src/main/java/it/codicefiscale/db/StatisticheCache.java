@@ -0,0 +1,82 @@
+package it.codicefiscale.db;
+
+/**
+ * Istantanea dei contatori della cache delle ricerche per provincia e denominazione.
+ * Le istanze sono immutabili.
+ */
+public final class StatisticheCache {
+
+    private final long trovate;
+    private final long mancate;
+    private final long rimozioni;
+    private final long scadenze;
+    private final int dimensione;
+    private final int dimensioneNegativi;
+
+    StatisticheCache(long trovate, long mancate, long rimozioni, long scadenze,
+                     int dimensione, int dimensioneNegativi) {
+        this.trovate = trovate;
+        this.mancate = mancate;
+        this.rimozioni = rimozioni;
+        this.scadenze = scadenze;
+        this.dimensione = dimensione;
+        this.dimensioneNegativi = dimensioneNegativi;
+    }
+
+    /**
+     * @return Il numero di ricerche servite dalla cache (hit), comprese quelle senza risultato
+     */
+    public long getTrovate() {
+        return trovate;
+    }
+
+    /**
+     * @return Il numero di ricerche non presenti in cache (miss), eseguite sul database
+     */
+    public long getMancate() {
+        return mancate;
+    }
+
+    /**
+     * @return Il numero di voci rimosse per fare spazio a voci nuove (eviction)
+     */
+    public long getRimozioni() {
+        return rimozioni;
+    }
+
+    /**
+     * @return Il numero di voci rimosse perché scadute
+     */
+    public long getScadenze() {
+        return scadenze;
+    }
+
+    /**
+     * @return Il numero di risultati positivi in cache
+     */
+    public int getDimensione() {
+        return dimensione;
+    }
+
+    /**
+     * @return Il numero di ricerche senza risultato in cache
+     */
+    public int getDimensioneNegativi() {
+        return dimensioneNegativi;
+    }
+
+    /**
+     * @return La frazione di ricerche servite dalla cache, o 0 se non ci sono state ricerche
+     */
+    public double getPercentualeTrovate() {
+        long totale = trovate + mancate;
+        return totale == 0 ? 0 : (double) trovate / totale;
+    }
+
+    @Override
+    public String toString() {
+        return "StatisticheCache{trovate=" + trovate + ", mancate=" + mancate
+                + ", rimozioni=" + rimozioni + ", scadenze=" + scadenze
+                + ", dimensione=" + dimensione + ", dimensioneNegativi=" + dimensioneNegativi + '}';
+    }
+}
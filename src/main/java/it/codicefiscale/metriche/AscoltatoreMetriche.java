@@ -0,0 +1,42 @@
+package it.codicefiscale.metriche;
+
+import it.codicefiscale.CodiceFiscaleValidator.Risultato.TipoErrore;
+
+/**
+ * Riceve le misure delle operazioni della libreria. Viene registrato con
+ * {@link Metriche#setAscoltatore(AscoltatoreMetriche)} e invocato in modo sincrono dai thread
+ * che eseguono le operazioni: le implementazioni devono essere thread-safe e molto veloci.
+ */
+public interface AscoltatoreMetriche {
+
+    /**
+     * Operazioni di validazione misurate.
+     */
+    enum Operazione {
+        // CodiceFiscaleValidator.validaFormato(...)
+        VALIDA_FORMATO,
+        // CodiceFiscaleValidator.valida(...) con i dati anagrafici
+        VALIDA
+    }
+
+    /**
+     * Chiamato al termine di una validazione.
+     *
+     * @param operazione L'operazione eseguita
+     * @param tipoErrore L'esito della validazione
+     * @param durataNanos La durata in nanosecondi
+     */
+    default void validazione(Operazione operazione, TipoErrore tipoErrore, long durataNanos) {
+    }
+
+    /**
+     * Chiamato al termine di una ricerca del codice belfiore per provincia e denominazione,
+     * con o senza data di nascita.
+     *
+     * @param inCache true se il risultato era in memoria (nella cache o nell'indice degli intervalli
+     *                di validità), false se è stato interrogato il database
+     * @param durataNanos La durata in nanosecondi
+     */
+    default void ricercaCodiceBelfiore(boolean inCache, long durataNanos) {
+    }
+}
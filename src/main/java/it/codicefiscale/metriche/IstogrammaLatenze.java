@@ -0,0 +1,155 @@
+package it.codicefiscale.metriche;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Istogramma concorrente di latenze in nanosecondi con intervalli a scala logaritmica,
+ * sul modello di HdrHistogram: ogni potenza di due è divisa in 8 intervalli, quindi l'errore
+ * relativo dei percentili è al più del 12,5% su tutto l'intervallo misurabile.
+ * La registrazione incrementa un solo {@link LongAdder} e non alloca memoria.
+ */
+public final class IstogrammaLatenze {
+
+    // Bit di mantissa per potenza di due: 2^3 = 8 intervalli
+    private static final int BIT_MANTISSA = 3;
+    private static final int INTERVALLI_PER_POTENZA = 1 << BIT_MANTISSA;
+
+    // Esponente massimo misurabile: 2^40 ns, circa 18 minuti; i valori maggiori finiscono nell'ultimo intervallo
+    private static final int ESPONENTE_MASSIMO = 40;
+
+    private static final int NUMERO_INTERVALLI = indice((1L << (ESPONENTE_MASSIMO + 1)) - 1) + 1;
+
+    private final LongAdder[] conteggi = new LongAdder[NUMERO_INTERVALLI];
+    private final LongAdder somma = new LongAdder();
+
+    public IstogrammaLatenze() {
+        for (int i = 0; i < NUMERO_INTERVALLI; i++) {
+            conteggi[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Registra una latenza. I valori negativi sono registrati come zero.
+     *
+     * @param nanos La latenza in nanosecondi
+     */
+    public void registra(long nanos) {
+        long valore = Math.max(0, nanos);
+        conteggi[Math.min(indice(valore), NUMERO_INTERVALLI - 1)].increment();
+        somma.add(valore);
+    }
+
+    /**
+     * Indice dell'intervallo di un valore non negativo: i valori minori di 8 hanno un intervallo ciascuno,
+     * gli altri sono individuati dall'esponente e dai 3 bit successivi al bit più significativo.
+     */
+    static int indice(long valore) {
+        if (valore < INTERVALLI_PER_POTENZA) {
+            return (int) valore;
+        }
+        int esponente = 63 - Long.numberOfLeadingZeros(valore);
+        int mantissa = (int) (valore >>> (esponente - BIT_MANTISSA)) & (INTERVALLI_PER_POTENZA - 1);
+        return (esponente - BIT_MANTISSA + 1) * INTERVALLI_PER_POTENZA + mantissa;
+    }
+
+    /**
+     * Valore massimo (incluso) dell'intervallo con l'indice indicato.
+     */
+    static long limiteSuperiore(int indice) {
+        if (indice < INTERVALLI_PER_POTENZA) {
+            return indice;
+        }
+        int spostamento = indice / INTERVALLI_PER_POTENZA - 1;
+        long inizio = (long) (INTERVALLI_PER_POTENZA + indice % INTERVALLI_PER_POTENZA) << spostamento;
+        return inizio + (1L << spostamento) - 1;
+    }
+
+    /**
+     * @return Un'istantanea dei conteggi e dei percentili
+     */
+    public Istantanea istantanea() {
+        long[] copia = new long[NUMERO_INTERVALLI];
+        for (int i = 0; i < NUMERO_INTERVALLI; i++) {
+            copia[i] = conteggi[i].sum();
+        }
+        return new Istantanea(copia, somma.sum());
+    }
+
+    /**
+     * Azzera l'istogramma. Le registrazioni concorrenti all'azzeramento possono andare perse.
+     */
+    public void azzera() {
+        for (LongAdder conteggio : conteggi) {
+            conteggio.reset();
+        }
+        somma.reset();
+    }
+
+    /**
+     * Stato dell'istogramma in un dato momento. Le istanze sono immutabili.
+     */
+    public static final class Istantanea {
+        private final long[] conteggi;
+        private final long totale;
+        private final long somma;
+
+        private Istantanea(long[] conteggi, long somma) {
+            this.conteggi = conteggi;
+            this.somma = somma;
+            long totale = 0;
+            for (long conteggio : conteggi) {
+                totale += conteggio;
+            }
+            this.totale = totale;
+        }
+
+        /**
+         * @return Il numero di latenze registrate
+         */
+        public long getConteggio() {
+            return totale;
+        }
+
+        /**
+         * @return La latenza media in nanosecondi, o 0 se non ci sono registrazioni
+         */
+        public double getMedia() {
+            return totale == 0 ? 0 : (double) somma / totale;
+        }
+
+        /**
+         * @param percentile Il percentile richiesto, tra 0 e 100 (es. 99.9)
+         * @return Il limite superiore dell'intervallo che contiene il percentile, in nanosecondi,
+         *         o 0 se non ci sono registrazioni
+         */
+        public long getPercentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("Percentile non valido: " + percentile);
+            }
+            if (totale == 0) {
+                return 0;
+            }
+            long soglia = Math.max(1, (long) Math.ceil(totale * percentile / 100));
+            long cumulato = 0;
+            for (int i = 0; i < conteggi.length; i++) {
+                cumulato += conteggi[i];
+                if (cumulato >= soglia) {
+                    return limiteSuperiore(i);
+                }
+            }
+            return limiteSuperiore(conteggi.length - 1);
+        }
+
+        /**
+         * @return Il limite superiore dell'intervallo della latenza massima registrata, o 0
+         */
+        public long getMassimo() {
+            for (int i = conteggi.length - 1; i >= 0; i--) {
+                if (conteggi[i] != 0) {
+                    return limiteSuperiore(i);
+                }
+            }
+            return 0;
+        }
+    }
+}
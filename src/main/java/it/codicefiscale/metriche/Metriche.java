@@ -0,0 +1,91 @@
+package it.codicefiscale.metriche;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Punto di registrazione dell'ascoltatore delle metriche.
+ *
+ * <p>Le metriche sono disabilitate per impostazione predefinita: in quel caso le operazioni
+ * misurate eseguono solo la lettura di un campo volatile e non chiamano {@link System#nanoTime()}.
+ * Possono essere abilitate con {@link #abilita()}, che registra anche l'MBean
+ * {@value #NOME_MBEAN}, oppure all'avvio con la proprietà di sistema {@value #PROPRIETA_ABILITA}.</p>
+ */
+public final class Metriche {
+
+    // Proprietà di sistema che abilita le metriche all'avvio
+    public static final String PROPRIETA_ABILITA = "codicefiscale.metriche";
+
+    // Nome JMX dell'MBean delle metriche
+    public static final String NOME_MBEAN = "it.codicefiscale:type=Metriche";
+
+    // Ascoltatore corrente, null se le metriche sono disabilitate
+    private static volatile AscoltatoreMetriche ascoltatore;
+
+    static {
+        if (Boolean.getBoolean(PROPRIETA_ABILITA)) {
+            abilita();
+        }
+    }
+
+    private Metriche() {
+    }
+
+    /**
+     * @return L'ascoltatore corrente, o null se le metriche sono disabilitate
+     */
+    public static AscoltatoreMetriche getAscoltatore() {
+        return ascoltatore;
+    }
+
+    /**
+     * Registra un ascoltatore personalizzato, sostituendo quello corrente.
+     *
+     * @param nuovoAscoltatore L'ascoltatore, o null per disabilitare le metriche
+     */
+    public static void setAscoltatore(AscoltatoreMetriche nuovoAscoltatore) {
+        ascoltatore = nuovoAscoltatore;
+    }
+
+    /**
+     * Abilita la raccolta delle metriche con un nuovo {@link RaccoltaMetriche} e lo registra
+     * nel server MBean della piattaforma, sostituendo un'eventuale registrazione precedente.
+     *
+     * @return La raccolta delle metriche appena registrata
+     */
+    public static synchronized RaccoltaMetriche abilita() {
+        RaccoltaMetriche raccolta = new RaccoltaMetriche();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName nome = new ObjectName(NOME_MBEAN);
+            try {
+                server.registerMBean(raccolta, nome);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(nome);
+                server.registerMBean(raccolta, nome);
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Impossibile registrare l'MBean " + NOME_MBEAN, e);
+        }
+        ascoltatore = raccolta;
+        return raccolta;
+    }
+
+    /**
+     * Disabilita le metriche e rimuove l'MBean, se registrato.
+     */
+    public static synchronized void disabilita() {
+        ascoltatore = null;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(NOME_MBEAN));
+        } catch (InstanceNotFoundException e) {
+            // MBean non registrato
+        } catch (JMException e) {
+            throw new IllegalStateException("Impossibile rimuovere l'MBean " + NOME_MBEAN, e);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package it.codicefiscale.metriche;
+
+import it.codicefiscale.CodiceFiscaleValidator.Risultato.TipoErrore;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ascoltatore che aggrega le misure in contatori {@link LongAdder} per {@link TipoErrore}
+ * e in istogrammi di latenza per operazione. È thread-safe e non alloca memoria durante
+ * la registrazione; viene esposto via JMX da {@link Metriche#abilita()}.
+ */
+public final class RaccoltaMetriche implements AscoltatoreMetriche, RaccoltaMetricheMXBean {
+
+    private static final TipoErrore[] TIPI_ERRORE = TipoErrore.values();
+    private static final Operazione[] OPERAZIONI = Operazione.values();
+
+    // Contatori indicizzati per operazione e ordinale del tipo di errore
+    private final LongAdder[][] esiti = new LongAdder[OPERAZIONI.length][TIPI_ERRORE.length];
+    private final IstogrammaLatenze[] latenze = new IstogrammaLatenze[OPERAZIONI.length];
+    private final IstogrammaLatenze latenzeDatabase = new IstogrammaLatenze();
+    private final LongAdder ricercheInCache = new LongAdder();
+    private final LongAdder ricercheDatabase = new LongAdder();
+
+    public RaccoltaMetriche() {
+        for (int o = 0; o < OPERAZIONI.length; o++) {
+            for (int t = 0; t < TIPI_ERRORE.length; t++) {
+                esiti[o][t] = new LongAdder();
+            }
+            latenze[o] = new IstogrammaLatenze();
+        }
+    }
+
+    @Override
+    public void validazione(Operazione operazione, TipoErrore tipoErrore, long durataNanos) {
+        esiti[operazione.ordinal()][tipoErrore.ordinal()].increment();
+        latenze[operazione.ordinal()].registra(durataNanos);
+    }
+
+    @Override
+    public void ricercaCodiceBelfiore(boolean inCache, long durataNanos) {
+        if (inCache) {
+            ricercheInCache.increment();
+        } else {
+            ricercheDatabase.increment();
+            latenzeDatabase.registra(durataNanos);
+        }
+    }
+
+    /**
+     * @param operazione L'operazione
+     * @param tipoErrore Il tipo di errore ({@code NESSUN_ERRORE} per le validazioni riuscite)
+     * @return Il numero di validazioni con quell'esito
+     */
+    public long getConteggio(Operazione operazione, TipoErrore tipoErrore) {
+        return esiti[operazione.ordinal()][tipoErrore.ordinal()].sum();
+    }
+
+    /**
+     * @param operazione L'operazione
+     * @return Un'istantanea delle latenze dell'operazione
+     */
+    public IstogrammaLatenze.Istantanea getLatenze(Operazione operazione) {
+        return latenze[operazione.ordinal()].istantanea();
+    }
+
+    /**
+     * @return Un'istantanea delle latenze delle ricerche eseguite sul database
+     */
+    public IstogrammaLatenze.Istantanea getLatenzeDatabase() {
+        return latenzeDatabase.istantanea();
+    }
+
+    @Override
+    public Map<String, Long> getEsitiValidaFormato() {
+        return esiti(Operazione.VALIDA_FORMATO);
+    }
+
+    @Override
+    public Map<String, Long> getEsitiValida() {
+        return esiti(Operazione.VALIDA);
+    }
+
+    @Override
+    public Map<String, Double> getLatenzeValidaFormato() {
+        return riepilogo(getLatenze(Operazione.VALIDA_FORMATO));
+    }
+
+    @Override
+    public Map<String, Double> getLatenzeValida() {
+        return riepilogo(getLatenze(Operazione.VALIDA));
+    }
+
+    @Override
+    public Map<String, Double> getLatenzeRicercaDatabase() {
+        return riepilogo(getLatenzeDatabase());
+    }
+
+    @Override
+    public long getRicercheInCache() {
+        return ricercheInCache.sum();
+    }
+
+    @Override
+    public long getRicercheDatabase() {
+        return ricercheDatabase.sum();
+    }
+
+    @Override
+    public double getPercentualeRicercheInCache() {
+        long inCache = ricercheInCache.sum();
+        long totale = inCache + ricercheDatabase.sum();
+        return totale == 0 ? 0 : (double) inCache / totale;
+    }
+
+    @Override
+    public void azzera() {
+        for (int o = 0; o < OPERAZIONI.length; o++) {
+            for (LongAdder contatore : esiti[o]) {
+                contatore.reset();
+            }
+            latenze[o].azzera();
+        }
+        latenzeDatabase.azzera();
+        ricercheInCache.reset();
+        ricercheDatabase.reset();
+    }
+
+    private Map<String, Long> esiti(Operazione operazione) {
+        Map<String, Long> mappa = new LinkedHashMap<>();
+        for (TipoErrore tipoErrore : TIPI_ERRORE) {
+            mappa.put(tipoErrore.name(), getConteggio(operazione, tipoErrore));
+        }
+        return mappa;
+    }
+
+    private static Map<String, Double> riepilogo(IstogrammaLatenze.Istantanea istantanea) {
+        Map<String, Double> mappa = new LinkedHashMap<>();
+        mappa.put("conteggio", (double) istantanea.getConteggio());
+        mappa.put("media", istantanea.getMedia());
+        mappa.put("p50", (double) istantanea.getPercentile(50));
+        mappa.put("p90", (double) istantanea.getPercentile(90));
+        mappa.put("p99", (double) istantanea.getPercentile(99));
+        mappa.put("p999", (double) istantanea.getPercentile(99.9));
+        mappa.put("massimo", (double) istantanea.getMassimo());
+        return mappa;
+    }
+}
@@ -0,0 +1,56 @@
+package it.codicefiscale.metriche;
+
+import java.util.Map;
+
+/**
+ * Interfaccia JMX delle metriche raccolte da {@link RaccoltaMetriche}.
+ * Le latenze sono espresse in nanosecondi con le chiavi {@code conteggio}, {@code media},
+ * {@code p50}, {@code p90}, {@code p99}, {@code p999} e {@code massimo}.
+ */
+public interface RaccoltaMetricheMXBean {
+
+    /**
+     * @return Il numero di chiamate a validaFormato per tipo di errore
+     */
+    Map<String, Long> getEsitiValidaFormato();
+
+    /**
+     * @return Il numero di chiamate a valida per tipo di errore
+     */
+    Map<String, Long> getEsitiValida();
+
+    /**
+     * @return Le latenze di validaFormato
+     */
+    Map<String, Double> getLatenzeValidaFormato();
+
+    /**
+     * @return Le latenze di valida
+     */
+    Map<String, Double> getLatenzeValida();
+
+    /**
+     * @return Le latenze delle ricerche del codice belfiore non servite dalla cache
+     */
+    Map<String, Double> getLatenzeRicercaDatabase();
+
+    /**
+     * @return Il numero di ricerche del codice belfiore servite dalla cache
+     */
+    long getRicercheInCache();
+
+    /**
+     * @return Il numero di ricerche del codice belfiore eseguite sul database
+     */
+    long getRicercheDatabase();
+
+    /**
+     * @return La frazione di ricerche del codice belfiore servite dalla cache
+     */
+    double getPercentualeRicercheInCache();
+
+    /**
+     * Azzera tutti i contatori e gli istogrammi.
+     */
+    void azzera();
+}
@@ -0,0 +1,103 @@
+package it.codicefiscale;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchivioCodiciTest {
+
+    @Test
+    void costruisci_FromFile_ShouldTrovareICodiciEIgnorareLOmocodia(@TempDir Path directory) throws IOException {
+        VariantiOmocodiche varianti = VariantiOmocodiche.di("RSSMRA85M01H501Q");
+        Path fileCodici = directory.resolve("codici.txt");
+        Files.write(fileCodici, Arrays.asList(
+                "VRDGPP80A41H501Y",
+                "RSSMRA85M01H501Q",
+                varianti.get(3),          // variante omocodica dello stesso codice
+                "",
+                "NON UN CODICE",
+                "RSSMRA85M01H501X",       // controllo errato
+                " vrdgpp80a41h501y "), StandardCharsets.UTF_8);
+
+        Path fileArchivio = directory.resolve("archivio.bin");
+        ArchivioCodici archivio = ArchivioCodici.costruisci(fileCodici, fileArchivio);
+
+        assertEquals(2, archivio.dimensione());
+        assertEquals(16 + 2 * 8, Files.size(fileArchivio));
+        for (String variante : varianti) {
+            assertTrue(archivio.contiene(variante), variante);
+        }
+        assertTrue(archivio.contiene(CodiceFiscale.di("VRDGPP80A41H501Y")));
+        assertTrue(archivio.contiene(CodiceFiscale.codifica("VRDGPP80A41H501Y")));
+        assertFalse(archivio.contiene("BNCLRA90B50F205J"));
+        assertFalse(archivio.contiene("NON UN CODICE"));
+        assertFalse(archivio.contiene((CharSequence) null));
+        assertFalse(archivio.contiene(CodiceFiscale.NON_VALIDO));
+
+        ArchivioCodici riaperto = ArchivioCodici.apri(fileArchivio);
+        assertEquals(2, riaperto.dimensione());
+        assertTrue(riaperto.contiene(varianti.get(127)));
+
+        Files.write(fileCodici, new byte[0]);
+        assertEquals(0, ArchivioCodici.costruisci(fileCodici, fileArchivio).dimensione());
+
+        Files.write(fileArchivio, "non è un archivio, ma è lungo abbastanza".getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> ArchivioCodici.apri(fileArchivio));
+    }
+
+    @Test
+    void di_ShouldContenereSoloICodiciInseriti() {
+        CodiceFiscaleValidator validator = new CodiceFiscaleValidator(null);
+        Random random = new Random(7);
+        String[] codici = new String[2000];
+        for (int i = 0; i < codici.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 6; j++) {
+                sb.append((char) ('A' + random.nextInt(26)));
+            }
+            sb.append(String.format("%02dA%02dH%03d", random.nextInt(100), 1 + random.nextInt(28), random.nextInt(1000)));
+            codici[i] = sb.append(validator.calcolaCarattereControllo(sb.toString())).toString();
+        }
+
+        // Metà dei codici nell'archivio, ripetuti per verificare la rimozione dei duplicati
+        List<String> inseriti = Arrays.asList(codici).subList(0, 1000);
+        List<String> conDuplicati = new java.util.ArrayList<>(inseriti);
+        conDuplicati.addAll(inseriti.subList(0, 100));
+        ArchivioCodici archivio = ArchivioCodici.di(conDuplicati);
+
+        long distinti = inseriti.stream().distinct().count();
+        assertEquals(distinti, archivio.dimensione());
+        for (int i = 0; i < codici.length; i++) {
+            assertEquals(inseriti.contains(codici[i]), archivio.contiene(codici[i]), codici[i]);
+        }
+    }
+
+    @Test
+    void ordinaSenzaDuplicati_ShouldOrdinareInPlace() {
+        Random random = new Random(11);
+        long[] attesi = new long[5000];
+        ByteBuffer buffer = ByteBuffer.allocateDirect(attesi.length * Long.BYTES);
+        for (int i = 0; i < attesi.length; i++) {
+            attesi[i] = random.nextInt(3000);
+            buffer.putLong(i * Long.BYTES, attesi[i]);
+        }
+
+        int distinti = ArchivioCodici.ordinaSenzaDuplicati(buffer, attesi.length);
+
+        long[] unici = Arrays.stream(attesi).sorted().distinct().toArray();
+        assertEquals(unici.length, distinti);
+        for (int i = 0; i < distinti; i++) {
+            assertEquals(unici[i], buffer.getLong(i * Long.BYTES));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package it.codicefiscale;
+
+import it.codicefiscale.db.DatabaseManager;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CodiceFiscaleTest {
+
+    @Test
+    void di_ShouldConvertireSenzaPerditeLeVariantiStandard() {
+        VariantiOmocodiche varianti = VariantiOmocodiche.di("RSSMRA85M41H501Q");
+        CodiceFiscale base = CodiceFiscale.di(varianti.getBase());
+
+        for (int livello = 0; livello <= 7; livello++) {
+            String variante = varianti.get((1 << livello) - 1);
+            CodiceFiscale codice = CodiceFiscale.di(variante);
+
+            assertEquals(variante, codice.toString());
+            assertEquals(variante, CodiceFiscale.daLong(codice.toLong()).toString());
+            assertEquals(livello, codice.getLivelloOmocodia());
+            assertEquals((1 << livello) - 1, codice.getMascheraOmocodia());
+            assertEquals(base, codice, "Le varianti sono uguali alla forma canonica");
+            assertEquals(base.hashCode(), codice.hashCode());
+            assertEquals(base.toString(), codice.canonico().toString());
+        }
+
+        // Variante non rilasciata dall'Agenzia: solo la posizione 6 è una lettera
+        assertThrows(IllegalArgumentException.class, () -> CodiceFiscale.di(varianti.get(64)));
+        assertThrows(IllegalArgumentException.class, () -> CodiceFiscale.di("RSSMRA85M01H501X"));
+        assertThrows(IllegalArgumentException.class, () -> CodiceFiscale.di("RSSMRA85M32H501Q"));
+        assertThrows(IllegalArgumentException.class, () -> CodiceFiscale.daLong(Long.MAX_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> CodiceFiscale.daLong(CodiceFiscale.NON_VALIDO));
+    }
+
+    @Test
+    void di_WithControlloDellaFormaBase_ShouldRifiutareIlCodice() {
+        // Omocodico con il carattere di controllo calcolato sulle cifre invece che sulle lettere
+        assertThrows(IllegalArgumentException.class, () -> CodiceFiscale.di(" rssmra85m01h50mq"));
+        assertEquals(CodiceFiscale.di("RSSMRA85M01H501Q"), CodiceFiscale.di(" rssmra85m01h50mi"));
+    }
+
+    @Test
+    void compareTo_ShouldSeguireLOrdineAlfabeticoDellaFormaCanonica() {
+        Random random = new Random(42);
+        CodiceFiscaleValidator validator = new CodiceFiscaleValidator(mock(DatabaseManager.class));
+        String[] codici = new String[500];
+        CodiceFiscale[] compattati = new CodiceFiscale[codici.length];
+        for (int i = 0; i < codici.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 6; j++) {
+                sb.append((char) ('A' + random.nextInt(26)));
+            }
+            int giorno = 1 + random.nextInt(28) + (random.nextBoolean() ? 40 : 0);
+            sb.append(String.format("%02d", random.nextInt(100)))
+                    .append(CodiceFiscaleValidator.MESI.charAt(random.nextInt(12)))
+                    .append(String.format("%02d", giorno))
+                    .append((char) ('A' + random.nextInt(26)))
+                    .append(String.format("%03d", random.nextInt(1000)));
+            codici[i] = sb.append(validator.calcolaCarattereControllo(sb.toString())).toString();
+            compattati[i] = CodiceFiscale.di(codici[i]);
+            assertEquals(codici[i], compattati[i].toString());
+        }
+
+        Arrays.sort(codici);
+        Arrays.sort(compattati);
+        for (int i = 0; i < codici.length; i++) {
+            assertEquals(codici[i], compattati[i].toString());
+        }
+    }
+
+    @Test
+    void codifica_WithValidator_ShouldScrivereIValoriCompattati() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        CodiceFiscaleValidator validator = new CodiceFiscaleValidator(mockDbManager);
+        String nonStandard = validator.variantiOmocodiche("RSSMRA85M01H501Q").get(64);
+
+        List<String> codici = Arrays.asList("RSSMRA85M01H501Q", "RSSMRA85M01H999Z", "INVALID", nonStandard, null);
+        long[] valori = new long[codici.size()];
+
+        assertEquals(2, validator.codifica(codici, valori));
+        assertEquals(CodiceFiscale.codifica("RSSMRA85M01H501Q"), valori[0]);
+        assertEquals(CodiceFiscale.NON_VALIDO, valori[1]);
+        assertEquals(CodiceFiscale.NON_VALIDO, valori[2]);
+        assertEquals(valori[0], valori[3], "Le varianti non standard sono convertite nella forma canonica");
+        assertEquals(CodiceFiscale.NON_VALIDO, valori[4]);
+        assertEquals("RSSMRA85M01H501Q", validator.codifica("RSSMRA85M01H501Q").toString());
+        assertNull(validator.codifica("INVALID"));
+    }
+}
@@ -1,10 +1,19 @@
 package it.codicefiscale;
 
 import it.codicefiscale.db.DatabaseManager;
+import it.codicefiscale.db.LuogoNascita;
+import it.codicefiscale.db.RegistroBelfiore;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.nio.CharBuffer;
 import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -112,4 +121,192 @@ class CodiceFiscaleValidatorTest {
         String cfNormalizzato = validator.normalizzaCF(codiceOmocodico);
         assertEquals("RSSMRA85M01H501Q", cfNormalizzato, "La normalizzazione del codice omocodico è errata.");
     }
+
+    @Test
+    void validaFormato_WithOmocodico_ShouldReturnValidOmocodico() throws Exception {
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+
+        CodiceFiscaleValidator.Risultato risultato = validator.validaFormato("RSSMRA85M01H50MI");
+
+        assertTrue(risultato.isValido());
+        assertTrue(risultato.isOmocodico());
+        assertEquals("Codice fiscale omocodico valido", risultato.getMessaggio());
+    }
+
+    @Test
+    void validaFormato_WithOmocodicoEControlloDellaFormaBase_ShouldEssereValidoSalvoEsclusione() throws Exception {
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        // Carattere di controllo calcolato sulla forma base RSSMRA85M01H501 invece che sulle lettere
+        String formaBase = "RSSMRA85M01H50MQ";
+
+        CodiceFiscaleValidator ufficiale = new CodiceFiscaleValidator(mockDbManager, false, false, false);
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.CARATTERE_CONTROLLO_ERRATO,
+                ufficiale.validaFormato(formaBase).getTipoErrore());
+        assertNull(ufficiale.codifica(formaBase));
+        assertTrue(ufficiale.validaFormato("RSSMRA85M01H50MI").isValido());
+
+        CodiceFiscaleValidator compatibile = validator;
+        CodiceFiscaleValidator.Risultato risultato = compatibile.validaFormato(formaBase);
+        assertTrue(risultato.isValido());
+        assertTrue(risultato.isOmocodico());
+        assertTrue(compatibile.validaFormato("RSSMRA85M01H50MI").isValido(), "La regola ufficiale resta valida");
+        assertEquals(CodiceFiscale.di("RSSMRA85M01H501Q"), compatibile.codifica(formaBase));
+
+        // Gli altri caratteri di controllo restano errati anche con l'opzione
+        for (char c = 'A'; c <= 'Z'; c++) {
+            if (c != 'Q' && c != 'I') {
+                assertFalse(compatibile.validaFormato("RSSMRA85M01H50M" + c).isValido(), "Controllo " + c);
+            }
+        }
+    }
+
+    @Test
+    void valida_WithOmocodicoUfficiale_ShouldCorrispondereAiDatiAnagrafici() throws Exception {
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        when(mockDbManager.getCodiceBelfiore("RM", "Roma")).thenReturn("H501");
+
+        CodiceFiscaleValidator.Risultato risultato = validator.valida("RSSMRA85M01H50MI", "Mario", "Rossi",
+                LocalDate.of(1985, 8, 1), 'M', "Roma", "RM");
+
+        assertTrue(risultato.isValido(), risultato.getMessaggio());
+        assertTrue(risultato.isOmocodico());
+    }
+
+    @Test
+    void validaFormato_WithLowerCaseAndSpaces_ShouldBeNormalized() throws Exception {
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+
+        CodiceFiscaleValidator.Risultato risultato =
+                validator.validaFormato(new StringBuilder("  rssmra85m01h501q\t"));
+
+        assertTrue(risultato.isValido());
+        assertFalse(risultato.isOmocodico());
+    }
+
+    @Test
+    void validaFormato_WithNonExistentDate_ShouldReturnDataNonValidaError() {
+        CodiceFiscaleValidator.Risultato risultato = validator.validaFormato("RSSMRA85M35H501G");
+
+        assertFalse(risultato.isValido());
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.DATA_NON_VALIDA, risultato.getTipoErrore());
+    }
+
+    @Test
+    void validaFormato_WithLetterInNumericPosition_ShouldReturnFormatoNonValidoError() {
+        CodiceFiscaleValidator.Risultato risultato = validator.validaFormato("RSSMRA85M01HA01Q");
+
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.FORMATO_NON_VALIDO, risultato.getTipoErrore());
+    }
+
+    @Test
+    void validaFormato_WithBatch_ShouldFillColumnarResults() throws Exception {
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        when(mockDbManager.isCodiceBelfioreValido("H999")).thenReturn(false);
+
+        List<String> codici = Arrays.asList(
+                "RSSMRA85M01H501Q", "RSSMRA85M01H50MI", "INVALID", "RSSMRA85M01H999Z", "RSSMRA85M01H501X", null);
+        RisultatiBatch risultati = validator.validaFormato(codici, new RisultatiBatch(10));
+
+        assertEquals(codici.size(), risultati.getDimensione());
+        for (int i = 0; i < codici.size(); i++) {
+            CodiceFiscaleValidator.Risultato atteso = validator.validaFormato(codici.get(i));
+            assertEquals(atteso.isValido(), risultati.isValido(i), "Validità errata all'indice " + i);
+            assertEquals(atteso.getTipoErrore(), risultati.getTipoErrore(i), "Tipo errore errato all'indice " + i);
+            assertEquals(atteso.isOmocodico(), risultati.isOmocodico(i), "Omocodia errata all'indice " + i);
+        }
+        assertEquals(2, risultati.conta(CodiceFiscaleValidator.Risultato.TipoErrore.NESSUN_ERRORE));
+    }
+
+    @Test
+    void validaFormato_WithFixedWidthRecords_ShouldValidateEachRecord() throws Exception {
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+
+        CharBuffer records = CharBuffer.wrap("RSSMRA85M01H501QRSSMRA85M01H501XRSSMRA85M01H50MI");
+        RisultatiBatch risultati = validator.validaFormato(records, new RisultatiBatch(3));
+
+        assertTrue(risultati.isValido(0));
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.CARATTERE_CONTROLLO_ERRATO, risultati.getTipoErrore(1));
+        assertTrue(risultati.isValido(2));
+        assertTrue(risultati.isOmocodico(2));
+        assertEquals(0, records.position());
+    }
+
+    @Test
+    void validaFormato_WithVerificaValiditaStorica_ShouldControllareLaDataDiNascita() throws Exception {
+        when(mockDbManager.getRegistroBelfiore()).thenReturn(RegistroBelfiore.predefinito());
+        CodiceFiscaleValidator storico = new CodiceFiscaleValidator(mockDbManager, true);
+        CodiceFiscaleValidator senzaVerifica = new CodiceFiscaleValidator(mockDbManager);
+
+        // Sovizzo (VI) ha il codice M436 solo dal 2024: non può comparire in un codice di un nato nel 1990
+        String nato1990 = conCarattereControllo("RSSMRA90A15M436");
+        CodiceFiscaleValidator.Risultato risultato = storico.validaFormato(nato1990);
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.COMUNE_NON_VALIDO, risultato.getTipoErrore());
+        assertTrue(risultato.getMessaggio().contains("M436"));
+        assertTrue(senzaVerifica.validaFormato(nato1990).isValido());
+
+        assertTrue(storico.validaFormato(conCarattereControllo("RSSMRA24A15M436")).isValido());
+        assertTrue(storico.validaFormato(conCarattereControllo("RSSMRA90A15I879")).isValido());
+
+        RisultatiBatch risultati = storico.validaFormato(Arrays.asList(nato1990, "RSSMRA85M01H501Q"), new RisultatiBatch(2));
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.COMUNE_NON_VALIDO, risultati.getTipoErrore(0));
+        assertTrue(risultati.isValido(1));
+    }
+
+    private String conCarattereControllo(String cfSenzaControllo) {
+        return cfSenzaControllo + validator.calcolaCarattereControllo(cfSenzaControllo);
+    }
+
+    @Test
+    void generaCodiceFiscale_ShouldPreferireIlCodiceValidoAllaDataDiNascita() throws Exception {
+        LocalDate dataNascita = LocalDate.of(1990, 1, 15);
+        when(mockDbManager.getCodiceBelfiore("VI", "Sovizzo")).thenReturn("M436");
+        when(mockDbManager.getCodiceBelfiore("VI", "Sovizzo", dataNascita)).thenReturn("I879");
+
+        String codiceFiscale = validator.generaCodiceFiscale("Mario", "Rossi", dataNascita, 'M', "Sovizzo", "VI");
+        assertEquals("I879", codiceFiscale.substring(11, 15));
+
+        // Senza un codice valido alla data si usa il codice più recente
+        LocalDate dataSconosciuta = LocalDate.of(1850, 1, 15);
+        codiceFiscale = validator.generaCodiceFiscale("Mario", "Rossi", dataSconosciuta, 'M', "Sovizzo", "VI");
+        assertEquals("M436", codiceFiscale.substring(11, 15));
+    }
+
+    @Test
+    void generaCodiceFiscale_WithRicercaApprossimata_ShouldUsareIlLuogoPiuSimile() throws Exception {
+        LocalDate dataNascita = LocalDate.of(1985, 8, 1);
+        when(mockDbManager.trovaLuogoSimile("FG", "S. Giovanni Rotondo"))
+                .thenReturn(new LuogoNascita("FG", "SAN GIOVANNI ROTONDO"));
+        when(mockDbManager.getCodiceBelfiore("FG", "SAN GIOVANNI ROTONDO")).thenReturn("H926");
+
+        assertNull(validator.generaCodiceFiscale("Mario", "Rossi", dataNascita, 'M', "S. Giovanni Rotondo", "FG"),
+                "Senza ricerca approssimata vale solo la denominazione esatta");
+
+        CodiceFiscaleValidator approssimato = new CodiceFiscaleValidator(mockDbManager, false, true);
+        String codiceFiscale = approssimato.generaCodiceFiscale("Mario", "Rossi", dataNascita, 'M',
+                "S. Giovanni Rotondo", "FG");
+        assertEquals(conCarattereControllo("RSSMRA85M01H926"), codiceFiscale);
+        assertNull(approssimato.generaCodiceFiscale("Mario", "Rossi", dataNascita, 'M', "Inesistente", "FG"));
+    }
+
+    @Test
+    void validaFormatoAsync_WithDatabaseLookup_ShouldRunOnExecutor() throws Exception {
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            StringBuilder codice = new StringBuilder("RSSMRA85M01H501Q");
+            CompletableFuture<CodiceFiscaleValidator.Risultato> futuro = validator.validaFormatoAsync(codice, executor);
+            // La modifica successiva della sequenza non deve influire sulla validazione
+            codice.setCharAt(15, 'X');
+
+            CodiceFiscaleValidator.Risultato risultato = futuro.get(10, TimeUnit.SECONDS);
+            assertTrue(risultato.isValido());
+
+            CodiceFiscaleValidator.Risultato anagrafico = validator.validaAsync("RSSMRA85M01H501Q", "Mario", "Rossi",
+                    LocalDate.of(1985, 8, 1), 'M', "Roma", "RM", executor).get(10, TimeUnit.SECONDS);
+            assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.DATI_ANAGRAFICI_NON_CORRISPONDENTI,
+                    anagrafico.getTipoErrore(), "Senza codice belfiore per Roma i dati non possono corrispondere");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,154 @@
+package it.codicefiscale;
+
+import it.codicefiscale.db.DatabaseManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ProcessoreValidazioneTest {
+
+    private static final String[] CAMPIONI = {
+            "RSSMRA85M01H501Q", "RSSMRA85M01H50MI", "RSSMRA85M01H501X", "RSSMRA85M01H999Z", "INVALID"
+    };
+
+    private CodiceFiscaleValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        when(mockDbManager.isCodiceBelfioreValido("H999")).thenReturn(false);
+        validator = new CodiceFiscaleValidator(mockDbManager);
+    }
+
+    @Test
+    void processore_WithSlowSubscriber_ShouldEmitAllResultsInOrder() throws Exception {
+        int numeroCodici = 5_003;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (SubmissionPublisher<CharSequence> sorgente = new SubmissionPublisher<>(executor, 16)) {
+            ProcessoreValidazione processore = new ProcessoreValidazione(
+                    validator, executor, 3, 64, Duration.ofMillis(5), 8);
+            sorgente.subscribe(processore);
+
+            // Sottoscrittore che richiede un risultato alla volta
+            List<CodiceFiscaleValidator.Risultato> ricevuti = new CopyOnWriteArrayList<>();
+            CompletableFuture<Void> fine = new CompletableFuture<>();
+            processore.subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(CodiceFiscaleValidator.Risultato risultato) {
+                    ricevuti.add(risultato);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    fine.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    fine.complete(null);
+                }
+            });
+
+            for (int i = 0; i < numeroCodici; i++) {
+                sorgente.submit(CAMPIONI[i % CAMPIONI.length]);
+            }
+            sorgente.close();
+            fine.get(30, TimeUnit.SECONDS);
+
+            assertEquals(numeroCodici, ricevuti.size());
+            for (int i = 0; i < numeroCodici; i++) {
+                assertEquals(validator.validaFormato(CAMPIONI[i % CAMPIONI.length]).getTipoErrore(),
+                        ricevuti.get(i).getTipoErrore(), "Risultato fuori ordine all'indice " + i);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void processore_WithSlowSource_ShouldLimitareILottiInElaborazione() throws Exception {
+        int parallelismo = 2;
+        int numeroCodici = 40;
+        AtomicInteger inElaborazione = new AtomicInteger();
+        AtomicInteger massimo = new AtomicInteger();
+        CodiceFiscaleValidator lento = mock(CodiceFiscaleValidator.class);
+        when(lento.validaFormato(any())).thenAnswer(invocation -> {
+            // I codici di un lotto sono validati in sequenza: le chiamate concorrenti sono i lotti in elaborazione
+            massimo.accumulateAndGet(inElaborazione.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            inElaborazione.decrementAndGet();
+            return validator.validaFormato(invocation.getArgument(0));
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (SubmissionPublisher<CharSequence> sorgente = new SubmissionPublisher<>(executor, 16)) {
+            // Lotti grandi e attesa breve: con una sorgente lenta ogni lotto contiene un solo codice
+            ProcessoreValidazione processore = new ProcessoreValidazione(
+                    lento, executor, parallelismo, 64, Duration.ofMillis(1), 8);
+            sorgente.subscribe(processore);
+
+            List<CodiceFiscaleValidator.Risultato> ricevuti = new CopyOnWriteArrayList<>();
+            CompletableFuture<Void> fine = new CompletableFuture<>();
+            processore.subscribe(new Flow.Subscriber<>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(CodiceFiscaleValidator.Risultato risultato) {
+                    ricevuti.add(risultato);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    fine.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    fine.complete(null);
+                }
+            });
+
+            for (int i = 0; i < numeroCodici; i++) {
+                sorgente.submit(CAMPIONI[i % CAMPIONI.length]);
+                Thread.sleep(3);
+            }
+            sorgente.close();
+            fine.get(30, TimeUnit.SECONDS);
+
+            assertEquals(numeroCodici, ricevuti.size());
+            for (int i = 0; i < numeroCodici; i++) {
+                assertEquals(validator.validaFormato(CAMPIONI[i % CAMPIONI.length]).getTipoErrore(),
+                        ricevuti.get(i).getTipoErrore(), "Risultato fuori ordine all'indice " + i);
+            }
+            assertTrue(massimo.get() <= parallelismo, "Lotti in elaborazione: " + massimo.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
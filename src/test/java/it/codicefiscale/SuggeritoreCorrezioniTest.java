@@ -0,0 +1,95 @@
+package it.codicefiscale;
+
+import it.codicefiscale.db.DatabaseManager;
+import it.codicefiscale.db.RegistroBelfiore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class SuggeritoreCorrezioniTest {
+
+    private static final String CODICE_VALIDO = "RSSMRA85M01H501Q";
+
+    private CodiceFiscaleValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.getRegistroBelfiore()).thenReturn(RegistroBelfiore.predefinito());
+        validator = new CodiceFiscaleValidator(mockDbManager);
+    }
+
+    @Test
+    void suggerisciCorrezioni_ShouldCorreggereUnCarattereConfuso() {
+        // "O" al posto di "0" nel giorno di nascita: solo la posizione 9 può essere corretta
+        List<Suggerimento> suggerimenti = validator.suggerisciCorrezioni("RSSMRA85MO1H501Q", 5);
+
+        assertFalse(suggerimenti.isEmpty());
+        Suggerimento primo = suggerimenti.get(0);
+        assertEquals(CODICE_VALIDO, primo.getCodiceFiscale());
+        assertEquals(Suggerimento.TipoCorrezione.SOSTITUZIONE, primo.getTipo());
+        assertEquals(9, primo.getPosizione());
+        assertEquals(1, primo.getCosto());
+    }
+
+    @Test
+    void suggerisciCorrezioni_ShouldCorreggereCarattereControlloETrasposizioni() {
+        assertTrue(contiene(validator.suggerisciCorrezioni("RSSMRA85M01H501X", 50), CODICE_VALIDO,
+                Suggerimento.TipoCorrezione.SOSTITUZIONE));
+        assertTrue(contiene(validator.suggerisciCorrezioni("RSSMRA58M01H501Q", 50), CODICE_VALIDO,
+                Suggerimento.TipoCorrezione.TRASPOSIZIONE));
+        assertTrue(contiene(validator.suggerisciCorrezioni("rssmra85m01h50q1", 50), CODICE_VALIDO,
+                Suggerimento.TipoCorrezione.TRASPOSIZIONE));
+    }
+
+    @Test
+    void suggerisciCorrezioni_ShouldRestituireSoloCodiciValidiOrdinatiPerCosto() {
+        List<Suggerimento> suggerimenti = validator.suggerisciCorrezioni("RSSMRA85M01H502Q", 50);
+
+        assertFalse(suggerimenti.isEmpty());
+        for (int i = 0; i < suggerimenti.size(); i++) {
+            Suggerimento suggerimento = suggerimenti.get(i);
+            assertTrue(validator.validaFormato(suggerimento.getCodiceFiscale()).isValido(), suggerimento.toString());
+            if (i > 0) {
+                assertTrue(suggerimenti.get(i - 1).getCosto() <= suggerimento.getCosto());
+            }
+        }
+        assertEquals(1, validator.suggerisciCorrezioni("RSSMRA85M01H502Q", 1).size());
+    }
+
+    @Test
+    void suggerisciCorrezioni_ShouldIgnorareCodiciValidiOLunghezzeErrate() {
+        assertTrue(validator.suggerisciCorrezioni(CODICE_VALIDO, 5).isEmpty());
+        assertTrue(validator.suggerisciCorrezioni("RSSMRA85M01H501", 5).isEmpty());
+        assertTrue(validator.suggerisciCorrezioni(null, 5).isEmpty());
+        assertTrue(validator.suggerisciCorrezioni("RSSMRA85M01H501X", 0).isEmpty());
+    }
+
+    @Test
+    void suggerisciCorrezioni_WithControlloDellaFormaBase_ShouldRispettareLOpzione() throws Exception {
+        // Omocodico con il controllo della forma base (RSSMRA85M01H50MQ) e "O" al posto di "0"
+        String errato = "RSSMRA85M01H5OMQ";
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.getRegistroBelfiore()).thenReturn(RegistroBelfiore.predefinito());
+        CodiceFiscaleValidator ufficiale = new CodiceFiscaleValidator(mockDbManager, false, false, false);
+        assertFalse(contiene(ufficiale.suggerisciCorrezioni(errato, 50), "RSSMRA85M01H50MQ",
+                Suggerimento.TipoCorrezione.SOSTITUZIONE));
+
+        CodiceFiscaleValidator formaBase = validator;
+        List<Suggerimento> suggerimenti = formaBase.suggerisciCorrezioni(errato, 50);
+
+        assertEquals("RSSMRA85M01H50MQ", suggerimenti.get(0).getCodiceFiscale());
+        assertEquals(suggerimenti.size(), suggerimenti.stream().map(Suggerimento::getCodiceFiscale).distinct().count());
+        for (Suggerimento suggerimento : suggerimenti) {
+            assertTrue(formaBase.validaFormato(suggerimento.getCodiceFiscale()).isValido(), suggerimento.toString());
+        }
+    }
+
+    private static boolean contiene(List<Suggerimento> suggerimenti, String codice, Suggerimento.TipoCorrezione tipo) {
+        return suggerimenti.stream().anyMatch(s -> s.getCodiceFiscale().equals(codice) && s.getTipo() == tipo);
+    }
+}
@@ -0,0 +1,69 @@
+package it.codicefiscale;
+
+import it.codicefiscale.db.DatabaseManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ValidatoreCsvTest {
+
+    private CodiceFiscaleValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        validator = new CodiceFiscaleValidator(mockDbManager);
+    }
+
+    @Test
+    void valida_WithHeaderQuotesAndCrlf_ShouldAnnotateEachRow() throws Exception {
+        String csv = "id,cf,nome\r\n"
+                + "1,RSSMRA85M01H501Q,Mario\r\n"
+                + "2,\"rssmra85m01h50mi\",Mario\n"
+                + "3,RSSMRA85M01H501X,Mario\n"
+                + "4\n"
+                + "5,INVALID,Màrio";
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StatisticheValidazione statistiche = new ValidatoreCsv(validator, 1, ',', true).valida(
+                Channels.newChannel(new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8))),
+                Channels.newChannel(out));
+
+        String[] righe = out.toString(StandardCharsets.UTF_8.name()).split("\n");
+        assertEquals(6, righe.length);
+        assertEquals("id,cf,nome,valido,tipo_errore,omocodico", righe[0]);
+        assertEquals("1,RSSMRA85M01H501Q,Mario,true,NESSUN_ERRORE,false", righe[1]);
+        assertEquals("2,\"rssmra85m01h50mi\",Mario,true,NESSUN_ERRORE,true", righe[2]);
+        assertEquals("3,RSSMRA85M01H501X,Mario,false,CARATTERE_CONTROLLO_ERRATO,false", righe[3]);
+        assertEquals("4,false,FORMATO_NON_VALIDO,false", righe[4]);
+        assertEquals("5,INVALID,Màrio,false,FORMATO_NON_VALIDO,false", righe[5]);
+
+        assertEquals(5, statistiche.getTotale());
+        assertEquals(2, statistiche.getValidi());
+        assertEquals(1, statistiche.getOmocodici());
+    }
+
+    @Test
+    void valida_WithManyRows_ShouldStreamThroughSmallBuffers() throws Exception {
+        StringBuilder tsv = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            tsv.append(i).append('\t').append("RSSMRA85M01H501Q").append('\n');
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StatisticheValidazione statistiche = new ValidatoreCsv(validator, 1, '\t', false).valida(
+                Channels.newChannel(new ByteArrayInputStream(tsv.toString().getBytes(StandardCharsets.US_ASCII))),
+                Channels.newChannel(out));
+
+        assertEquals(10_000, statistiche.getValidi());
+        assertTrue(out.toString(StandardCharsets.US_ASCII.name()).endsWith("9999\tRSSMRA85M01H501Q\ttrue\tNESSUN_ERRORE\tfalse\n"));
+    }
+}
@@ -0,0 +1,54 @@
+package it.codicefiscale;
+
+import it.codicefiscale.db.DatabaseManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ValidatoreParalleloTest {
+
+    private static final String[] CAMPIONI = {
+            "RSSMRA85M01H501Q", "RSSMRA85M01H50MI", "RSSMRA85M01H501X", "RSSMRA85M01H999Z", "INVALID"
+    };
+
+    private CodiceFiscaleValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        when(mockDbManager.isCodiceBelfioreValido("H999")).thenReturn(false);
+        validator = new CodiceFiscaleValidator(mockDbManager);
+    }
+
+    @Test
+    void valida_WithLargeBatch_ShouldMatchSequentialValidation() {
+        List<String> codici = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            codici.add(CAMPIONI[i % CAMPIONI.length]);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        RisultatiBatch risultati = new RisultatiBatch(codici.size());
+        StatisticheValidazione statistiche;
+        try {
+            statistiche = new ValidatoreParallelo(validator, pool, 256).valida(codici, risultati);
+        } finally {
+            pool.shutdown();
+        }
+
+        assertEquals(codici.size(), statistiche.getTotale());
+        assertEquals(4_000, statistiche.getConteggio(CodiceFiscaleValidator.Risultato.TipoErrore.FORMATO_NON_VALIDO));
+        assertEquals(8_000, statistiche.getValidi());
+        assertEquals(4_000, statistiche.getOmocodici());
+        for (int i = 0; i < codici.size(); i++) {
+            assertEquals(validator.validaFormato(codici.get(i)).getTipoErrore(), risultati.getTipoErrore(i));
+        }
+    }
+}
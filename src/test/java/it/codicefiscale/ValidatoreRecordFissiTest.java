@@ -0,0 +1,45 @@
+package it.codicefiscale;
+
+import it.codicefiscale.db.DatabaseManager;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ValidatoreRecordFissiTest {
+
+    @TempDir
+    Path cartella;
+
+    @Test
+    void valida_WithNewlineTerminatedRecords_ShouldReportFailingOffsets() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        CodiceFiscaleValidator validator = new CodiceFiscaleValidator(mockDbManager);
+
+        Path file = cartella.resolve("codici.txt");
+        Files.write(file, ("RSSMRA85M01H501Q\n"
+                + "RSSMRA85M01H501X\n"
+                + "RSSMRA85M01H50MI\n"
+                + "RSSMRA85M35H501G\n"
+                + "RSSMRA").getBytes(StandardCharsets.US_ASCII));
+
+        Map<Long, CodiceFiscaleValidator.Risultato.TipoErrore> errori = new LinkedHashMap<>();
+        StatisticheValidazione statistiche = new ValidatoreRecordFissi(validator, 17).valida(file, errori::put);
+
+        assertEquals(5, statistiche.getTotale());
+        assertEquals(2, statistiche.getValidi());
+        assertEquals(1, statistiche.getOmocodici());
+        assertEquals(3, errori.size());
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.CARATTERE_CONTROLLO_ERRATO, errori.get(17L));
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.DATA_NON_VALIDA, errori.get(51L));
+        assertEquals(CodiceFiscaleValidator.Risultato.TipoErrore.FORMATO_NON_VALIDO, errori.get(68L));
+    }
+}
@@ -0,0 +1,98 @@
+package it.codicefiscale;
+
+import it.codicefiscale.db.DatabaseManager;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class VariantiOmocodicheTest {
+
+    private CodiceFiscaleValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        validator = new CodiceFiscaleValidator(mockDbManager);
+    }
+
+    @Test
+    void variantiOmocodiche_ShouldGenerareTutteLeVariantiValide() {
+        VariantiOmocodiche varianti = validator.variantiOmocodiche("RSSMRA85M01H501Q");
+
+        assertEquals("RSSMRA85M01H501Q", varianti.getBase());
+        assertEquals("RSSMRA85M01H501Q", varianti.get(0));
+        assertEquals("RSSMRA85M01H50M", varianti.get(1).substring(0, 15), "Il bit 0 sostituisce la posizione 14");
+        assertEquals("RSSMRAUR", varianti.get(127).substring(0, 8));
+
+        Set<String> distinte = new HashSet<>();
+        int indice = 0;
+        for (String variante : varianti) {
+            assertTrue(distinte.add(variante));
+            // Il carattere di controllo incrementale coincide con quello calcolato da zero
+            assertEquals(validator.calcolaCarattereControllo(variante.substring(0, 15)), variante.charAt(15));
+            CodiceFiscaleValidator.Risultato risultato = validator.validaFormato(variante);
+            assertTrue(risultato.isValido(), variante);
+            assertEquals(indice++ != 0, risultato.isOmocodico());
+            assertEquals("RSSMRA85M01H501", validator.normalizzaCF(variante).substring(0, 15));
+        }
+        assertEquals(VariantiOmocodiche.NUMERO_VARIANTI, distinte.size());
+
+        // Da un codice omocodico o con il controllo errato si ottengono le stesse varianti
+        VariantiOmocodiche daOmocodico = validator.variantiOmocodiche(" rssmra85m01h50mi");
+        for (int v = 0; v < VariantiOmocodiche.NUMERO_VARIANTI; v++) {
+            assertEquals(varianti.get(v), daOmocodico.get(v));
+        }
+        assertEquals("RSSMRA85M01H501Q", validator.variantiOmocodiche("RSSMRA85M01H501X").getBase());
+
+        assertThrows(IllegalArgumentException.class, () -> validator.variantiOmocodiche("INVALID"));
+        assertThrows(IndexOutOfBoundsException.class, () -> varianti.get(VariantiOmocodiche.NUMERO_VARIANTI));
+    }
+
+    @Test
+    void variantiOmocodiche_WithLocaleTurco_ShouldConvertireLeMinuscole() {
+        Locale predefinito = Locale.getDefault();
+        Locale.setDefault(new Locale("tr", "TR"));
+        try {
+            // In turco "i".toUpperCase() è "İ" (U+0130), fuori dalle tabelle dei pesi
+            VariantiOmocodiche varianti = validator.variantiOmocodiche("rssmri85m01h501q");
+            assertEquals("RSSMRI85M01H501", varianti.getBase().substring(0, 15));
+            assertTrue(validator.validaFormato(varianti.get(1)).isValido());
+            assertEquals(CodiceFiscale.di(varianti.getBase()), validator.codifica(varianti.get(1).toLowerCase(Locale.ROOT)));
+            assertFalse(validator.suggerisciCorrezioni("rssmri85m01h501a", 5).isEmpty());
+        } finally {
+            Locale.setDefault(predefinito);
+        }
+    }
+
+    @Test
+    void scriviTutte_ShouldScrivereRecordValidabiliInUnBufferRiutilizzabile() {
+        CharBuffer buffer = CharBuffer.allocate(VariantiOmocodiche.NUMERO_VARIANTI * 16 + 3);
+        RisultatiBatch risultati = new RisultatiBatch(VariantiOmocodiche.NUMERO_VARIANTI);
+
+        for (String codice : new String[]{"RSSMRA85M01H501Q", "VRDGPP80A41H501K"}) {
+            VariantiOmocodiche varianti = validator.variantiOmocodiche(codice);
+            buffer.clear();
+            varianti.scriviTutte(buffer);
+            buffer.flip();
+
+            assertEquals(VariantiOmocodiche.NUMERO_VARIANTI * 16, buffer.remaining());
+            for (int v = 0; v < VariantiOmocodiche.NUMERO_VARIANTI; v++) {
+                assertEquals(varianti.get(v), buffer.subSequence(v * 16, v * 16 + 16).toString());
+            }
+            validator.validaFormato(buffer, risultati);
+            assertEquals(VariantiOmocodiche.NUMERO_VARIANTI,
+                    risultati.conta(CodiceFiscaleValidator.Risultato.TipoErrore.NESSUN_ERRORE));
+        }
+
+        assertThrows(java.nio.BufferOverflowException.class,
+                () -> validator.variantiOmocodiche("RSSMRA85M01H501Q").scriviTutte(CharBuffer.allocate(16)));
+    }
+}
@@ -0,0 +1,68 @@
+package it.codicefiscale.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CacheCodiciTest {
+
+    @Test
+    void memorizza_OltreLaCapacita_ShouldEspellereLeVociNonUsate() {
+        CacheCodici cache = new CacheCodici(3, 2, 0);
+        cache.memorizza("RM|ROMA", "H501");
+        cache.memorizza("MI|MILANO", "F205");
+        cache.memorizza("TO|TORINO", "L219");
+
+        // Roma viene letta e ottiene una seconda possibilità
+        assertEquals("H501", cache.cerca("RM|ROMA"));
+        cache.memorizza("NA|NAPOLI", "F839");
+
+        StatisticheCache statistiche = cache.statistiche();
+        assertEquals(3, statistiche.getDimensione());
+        assertEquals(1, statistiche.getRimozioni());
+        assertEquals("H501", cache.cerca("RM|ROMA"));
+        assertNull(cache.cerca("MI|MILANO"), "La voce meno recente e non usata dovrebbe essere espulsa");
+        assertEquals("F839", cache.cerca("NA|NAPOLI"));
+    }
+
+    @Test
+    void memorizza_RisultatiNegativi_ShouldUsareUnaCapacitaSeparata() {
+        CacheCodici cache = new CacheCodici(10, 2, 0);
+        cache.memorizza("RM|ROMA", "H501");
+        for (int i = 0; i < 100; i++) {
+            cache.memorizza("XX|COMUNE" + i, null);
+        }
+
+        StatisticheCache statistiche = cache.statistiche();
+        assertEquals(1, statistiche.getDimensione());
+        assertEquals(2, statistiche.getDimensioneNegativi());
+        assertEquals(CacheCodici.NESSUN_CODICE, cache.cerca("XX|COMUNE99"));
+        assertEquals("H501", cache.cerca("RM|ROMA"), "I negativi non dovrebbero espellere i risultati positivi");
+
+        CacheCodici senzaNegativi = new CacheCodici(10, 0, 0);
+        senzaNegativi.memorizza("XX|COMUNE", null);
+        assertNull(senzaNegativi.cerca("XX|COMUNE"));
+    }
+
+    @Test
+    void cerca_VoceScaduta_ShouldRestituireNull() {
+        AtomicLong adesso = new AtomicLong();
+        CacheCodici cache = new CacheCodici(10, 10, 60, adesso::get);
+        cache.memorizza("RM|ROMA", "H501");
+
+        adesso.addAndGet(TimeUnit.SECONDS.toNanos(59));
+        assertEquals("H501", cache.cerca("RM|ROMA"));
+        adesso.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        assertNull(cache.cerca("RM|ROMA"));
+
+        StatisticheCache statistiche = cache.statistiche();
+        assertEquals(1, statistiche.getTrovate());
+        assertEquals(1, statistiche.getMancate());
+        assertEquals(1, statistiche.getScadenze());
+        assertEquals(0, statistiche.getDimensione());
+        assertEquals(0.5, statistiche.getPercentualeTrovate());
+    }
+}
@@ -1,9 +1,31 @@
 package it.codicefiscale.db;
 
+import it.codicefiscale.metriche.AscoltatoreMetriche;
+import it.codicefiscale.metriche.Metriche;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
-
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -137,4 +159,277 @@ class DatabaseManagerTest {
         assertEquals("H501", codiceBelfiore, "Il codice belfiore per ROMA (RM) non è quello atteso");
     }
 
+    @Test
+    void getCodiceBelfiore_WithComuneRicostituito_ShouldReturnCodicePiuRecente() throws SQLException {
+        // Sovizzo (VI) ha avuto il codice I879 fino al 2023 e M436 dal 2024
+        assertEquals("M436", databaseManager.getCodiceBelfiore("vi", "Sovizzo"));
+        assertTrue(databaseManager.isCodiceBelfioreValido("I879"));
+        assertTrue(databaseManager.isCodiceBelfioreValido("Z252"), "Il codice attuale dell'Armenia dovrebbe essere presente");
+    }
+
+    @Test
+    void getCodiceBelfiore_WithData_ShouldReturnCodiceValidoNellaData() throws SQLException {
+        assertEquals("I879", databaseManager.getCodiceBelfiore("VI", "Sovizzo", LocalDate.of(1990, 5, 1)));
+        assertEquals("I879", databaseManager.getCodiceBelfiore("vi", "sovizzo ", LocalDate.of(2023, 12, 31)));
+        assertEquals("M436", databaseManager.getCodiceBelfiore("VI", "Sovizzo", LocalDate.of(2024, 1, 1)));
+        assertNull(databaseManager.getCodiceBelfiore("VI", "Sovizzo", LocalDate.of(1850, 1, 1)),
+                "Sovizzo non esisteva prima del 1866");
+        assertEquals("H501", databaseManager.getCodiceBelfiore("RM", "Roma", LocalDate.of(1985, 8, 1)));
+        assertEquals("M436", databaseManager.getCodiceBelfiore("VI", "Sovizzo", null));
+        assertNull(databaseManager.getCodiceBelfiore("XX", "ComuneFittizio", LocalDate.of(1985, 8, 1)));
+    }
+
+    @Test
+    void cercaLuoghiSimili_WithDenominazioneApprossimata_ShouldTrovareIlComune() throws SQLException {
+        assertEquals(List.of(new LuogoNascita("FG", "SAN GIOVANNI ROTONDO")),
+                databaseManager.cercaLuoghiSimili("fg", "S. Giovanni Rotondo", 3));
+        assertEquals(new LuogoNascita("AG", "CANICATTI'"), databaseManager.trovaLuogoSimile("AG", "Canicattì"));
+        assertEquals(new LuogoNascita("VI", "SOVIZZO"), databaseManager.trovaLuogoSimile("VI", "Sovizo"));
+        assertEquals("M436", databaseManager.getCodiceBelfiore("VI",
+                databaseManager.trovaLuogoSimile("VI", "Sovizo").getDenominazione()));
+        assertNull(databaseManager.trovaLuogoSimile("RM", "Comune inesistente"));
+        assertNull(databaseManager.trovaLuogoSimile("XX", "Roma"));
+        assertTrue(databaseManager.cercaLuoghiSimili(null, "Forlì", 5).contains(new LuogoNascita("FC", "FORLI'")));
+    }
+
+    @Test
+    void getCodiciBelfiore_WithMoltiLuoghi_ShouldEseguireUnaQueryPerLotto() throws SQLException {
+        List<LuogoNascita> luoghi = new ArrayList<>();
+        luoghi.add(new LuogoNascita("RM", "Roma"));
+        luoghi.add(new LuogoNascita(" rm", "ROMA "));
+        luoghi.add(new LuogoNascita("VI", "Sovizzo"));
+        luoghi.add(new LuogoNascita("EE", "Stati Uniti d'America"));
+        // Luoghi inesistenti per superare la dimensione di un lotto
+        for (int i = 0; i < DatabaseManager.LUOGHI_PER_QUERY + 10; i++) {
+            luoghi.add(new LuogoNascita("XX", "Comune fittizio " + i));
+        }
+
+        databaseManager.svuotaCache();
+        Map<LuogoNascita, String> codici = databaseManager.getCodiciBelfiore(luoghi);
+
+        assertEquals(3, codici.size());
+        assertEquals("H501", codici.get(new LuogoNascita("RM", "Roma")));
+        assertEquals("M436", codici.get(new LuogoNascita("VI", "Sovizzo")));
+        assertEquals("Z404", codici.get(new LuogoNascita("EE", "Stati Uniti d'America")));
+        assertEquals(luoghi.size() - 1, databaseManager.getStatisticheCache().getDimensione()
+                + databaseManager.getStatisticheCache().getDimensioneNegativi(), "Ogni luogo distinto va in cache");
+
+        // I risultati in cache coincidono con quelli delle ricerche singole
+        long mancatePrima = databaseManager.getStatisticheCache().getMancate();
+        for (LuogoNascita luogo : luoghi) {
+            assertEquals(codici.get(luogo), databaseManager.getCodiceBelfiore(luogo.getSiglaProvincia(), luogo.getDenominazione()));
+        }
+        assertEquals(mancatePrima, databaseManager.getStatisticheCache().getMancate());
+        assertEquals(codici, databaseManager.getCodiciBelfiore(luoghi));
+    }
+
+    @Test
+    void getCodiciBelfiore_WithMetriche_ShouldInviareUnEventoPerLuogo() throws SQLException {
+        List<LuogoNascita> luoghi = List.of(new LuogoNascita("RM", "Roma"), new LuogoNascita("VI", "Sovizzo"),
+                new LuogoNascita("XX", "Comune fittizio"));
+        databaseManager.svuotaCache();
+        databaseManager.getCodiceBelfiore("RM", "Roma");
+
+        AscoltatoreMetriche ascoltatore = mock(AscoltatoreMetriche.class);
+        Metriche.setAscoltatore(ascoltatore);
+        try {
+            databaseManager.getCodiciBelfiore(luoghi);
+        } finally {
+            Metriche.setAscoltatore(null);
+        }
+
+        verify(ascoltatore, times(1)).ricercaCodiceBelfiore(eq(true), anyLong());
+        verify(ascoltatore, times(2)).ricercaCodiceBelfiore(eq(false), anyLong());
+    }
+
+    @Test
+    void getCodiceBelfiore_WithDataEMetriche_ShouldInviareUnEventoInMemoria() throws SQLException {
+        databaseManager.getCodiceBelfiore("VI", "Sovizzo", LocalDate.of(1990, 1, 1));
+
+        AscoltatoreMetriche ascoltatore = mock(AscoltatoreMetriche.class);
+        Metriche.setAscoltatore(ascoltatore);
+        try {
+            assertEquals("I879", databaseManager.getCodiceBelfiore("VI", "Sovizzo", LocalDate.of(1990, 1, 1)));
+            assertNull(databaseManager.getCodiceBelfiore("XX", "Comune fittizio", LocalDate.of(1990, 1, 1)));
+        } finally {
+            Metriche.setAscoltatore(null);
+        }
+
+        verify(ascoltatore, times(2)).ricercaCodiceBelfiore(eq(true), anyLong());
+        verify(ascoltatore, never()).ricercaCodiceBelfiore(eq(false), anyLong());
+    }
+
+    @Test
+    void preriscalda_ShouldInizializzareIlDatabaseECaricareLaCache() throws Exception {
+        DatabaseManager.reset();
+        DatabaseManager manager = DatabaseManager.getInstance();
+
+        // Né la creazione né il registro dei codici belfiore richiedono il database
+        assertFalse(manager.isInizializzato());
+        assertTrue(manager.isCodiceBelfioreValido("H501"));
+        assertFalse(manager.isInizializzato());
+
+        manager.preriscalda().get(30, TimeUnit.SECONDS);
+        assertTrue(manager.isInizializzato());
+
+        StatisticheCache prima = manager.getStatisticheCache();
+        assertTrue(prima.getDimensione() > 10_000, "La cache dovrebbe contenere tutte le denominazioni");
+        assertEquals("M436", manager.getCodiceBelfiore("VI", "Sovizzo"));
+        assertEquals("H501", manager.getCodiceBelfiore("RM", "Roma"));
+        StatisticheCache dopo = manager.getStatisticheCache();
+        assertEquals(prima.getTrovate() + 2, dopo.getTrovate());
+        assertEquals(prima.getMancate(), dopo.getMancate());
+    }
+
+    @Test
+    void estraiDatabase_WithConcurrentThreads_ShouldCreareUnSoloFileConImpronta(@TempDir Path directory) throws Exception {
+        Path sorgente = directory.resolve("sorgente.db");
+        Files.write(sorgente, "contenuto del database".getBytes(StandardCharsets.US_ASCII));
+        URL risorsa = sorgente.toUri().toURL();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Path>> estratti = new ArrayList<>();
+        try {
+            for (int i = 0; i < 8; i++) {
+                estratti.add(executor.submit(() -> DatabaseManager.estraiDatabase(risorsa, directory.resolve("estratti"))));
+            }
+            Path primo = estratti.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<Path> estratto : estratti) {
+                assertEquals(primo, estratto.get(10, TimeUnit.SECONDS));
+            }
+            assertTrue(primo.getFileName().toString().matches("cf_validator_db_[0-9a-f]{16}\\.db"));
+            assertArrayEquals(Files.readAllBytes(sorgente), Files.readAllBytes(primo));
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Un contenuto diverso produce un file diverso, senza riusare la copia precedente
+        Files.write(sorgente, "nuova versione".getBytes(StandardCharsets.US_ASCII));
+        Path aggiornato = DatabaseManager.estraiDatabase(risorsa, directory.resolve("estratti"));
+        assertNotEquals(estratti.get(0).get(), aggiornato);
+        assertEquals("nuova versione", new String(Files.readAllBytes(aggiornato), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void getCodiceBelfiore_WithDatabaseInMemoria_ShouldRispondereSenzaFile() throws Exception {
+        System.setProperty(DatabaseManager.PROPRIETA_MEMORIA, "true");
+        try {
+            DatabaseManager.reset();
+            DatabaseManager manager = DatabaseManager.getInstance();
+            assertEquals("H501", manager.getCodiceBelfiore("RM", "Roma"));
+            assertEquals("M436", manager.getCodiceBelfiore("VI", "Sovizzo"));
+            assertNull(manager.getCodiceBelfiore("XX", "ComuneFittizio"));
+        } finally {
+            System.clearProperty(DatabaseManager.PROPRIETA_MEMORIA);
+            DatabaseManager.reset();
+        }
+
+        byte[] immagine = Files.readAllBytes(Path.of("src/main/resources/database/comuni_nazioni.db"));
+        try (PoolConnessioni pool = PoolConnessioni.inMemoria(immagine, 2)) {
+            ConnessioneLettura connessione = pool.acquisisci();
+            try (Statement stmt = connessione.getConnection().createStatement()) {
+                assertThrows(SQLException.class, () -> stmt.execute("DELETE FROM comuni_nazioni"),
+                        "Il database in memoria dovrebbe essere in sola lettura");
+            } finally {
+                pool.rilascia(connessione);
+            }
+        }
+    }
+
+    @Test
+    void getRegistroBelfiore_ShouldContainCodiciDelDatabase() throws SQLException {
+        RegistroBelfiore registro = databaseManager.getRegistroBelfiore();
+
+        assertSame(registro, databaseManager.getRegistroBelfiore(), "Il registro dovrebbe essere caricato una sola volta");
+        assertTrue(registro.contiene("H501"), "Il codice belfiore di Roma dovrebbe essere presente");
+        assertTrue(registro.contiene(RegistroBelfiore.impacchetta("Z404")), "Il codice belfiore degli USA dovrebbe essere presente");
+        assertFalse(registro.contiene("Z999"), "Il codice Z999 non dovrebbe essere presente");
+        assertFalse(registro.contiene("ROMA"), "Un codice malformato non dovrebbe essere presente");
+        assertTrue(databaseManager.isCodiceBelfioreValido("h501"));
+    }
+
+    @Test
+    void registroBelfiore_isValido_ShouldRispettareGliIntervalliDiValidita() throws SQLException {
+        RegistroBelfiore registro = databaseManager.getRegistroBelfiore();
+
+        // Sovizzo (VI): I879 fino al 31/12/2023 (incluso), M436 dal 01/01/2024
+        assertTrue(registro.isValido("I879", LocalDate.of(1990, 5, 1)));
+        assertTrue(registro.isValido("I879", LocalDate.of(2023, 12, 31)));
+        assertFalse(registro.isValido("I879", LocalDate.of(2024, 1, 1)));
+        assertFalse(registro.isValido("M436", LocalDate.of(2023, 12, 31)));
+        assertTrue(registro.isValido("M436", LocalDate.of(2024, 1, 1)));
+        assertTrue(registro.isValido("H501", LocalDate.of(1950, 1, 1)), "Roma non ha una data di fine validità");
+        assertFalse(registro.isValido("Z999", LocalDate.of(1990, 1, 1)));
+    }
+
+    @Test
+    void registroPredefinito_ShouldMatchRegistroCaricatoDalDatabase() throws Exception {
+        RegistroBelfiore dalDatabase;
+        try (Connection connection = DriverManager.getConnection(
+                "jdbc:sqlite:src/main/resources/database/comuni_nazioni.db")) {
+            dalDatabase = RegistroBelfiore.carica(connection);
+        }
+        ByteArrayOutputStream binario = new ByteArrayOutputStream();
+        dalDatabase.scrivi(binario);
+        RegistroBelfiore riletto = RegistroBelfiore.leggi(ByteBuffer.wrap(binario.toByteArray()));
+        RegistroBelfiore predefinito = RegistroBelfiore.predefinito();
+
+        assertEquals(dalDatabase.dimensione(), predefinito.dimensione());
+        boolean[] indiciUsati = new boolean[predefinito.dimensione()];
+        for (char lettera = 'A'; lettera <= 'Z'; lettera++) {
+            for (int numero = 0; numero < 1000; numero++) {
+                int codice = RegistroBelfiore.impacchetta(String.format("%c%03d", lettera, numero));
+                assertEquals(dalDatabase.contiene(codice), predefinito.contiene(codice));
+                assertEquals(dalDatabase.indiceDenso(codice), riletto.indiceDenso(codice));
+                int indice = predefinito.indiceDenso(codice);
+                if (indice >= 0) {
+                    assertFalse(indiciUsati[indice], "Indice denso duplicato: " + indice);
+                    indiciUsati[indice] = true;
+                }
+            }
+        }
+    }
+
+    @Test
+    void getCodiceBelfiore_WithConcurrentThreads_ShouldReturnConsistentResults() throws Exception {
+        String[][] luoghi = {
+                {"RM", "ROMA", "H501"}, {"MI", "MILANO", "F205"}, {"TO", "TORINO", "L219"},
+                {"NA", "NAPOLI", "F839"}, {"FI", "FIRENZE", "D612"}, {"XX", "COMUNEFITTIZIO", null}
+        };
+        int numeroThread = 64;
+        databaseManager.svuotaCache();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numeroThread);
+        CountDownLatch partenza = new CountDownLatch(1);
+        List<Future<Integer>> esiti = new ArrayList<>();
+        try {
+            for (int t = 0; t < numeroThread; t++) {
+                int offset = t;
+                esiti.add(executor.submit(() -> {
+                    partenza.await();
+                    int errori = 0;
+                    for (int i = 0; i < 200; i++) {
+                        String[] luogo = luoghi[(offset + i) % luoghi.length];
+                        if (!Objects.equals(luogo[2], databaseManager.getCodiceBelfiore(luogo[0], luogo[1]))) {
+                            errori++;
+                        }
+                        if (luogo[2] != null && !databaseManager.isCodiceBelfioreValido(luogo[2])) {
+                            errori++;
+                        }
+                        if (i % 50 == 0) {
+                            databaseManager.svuotaCache();
+                        }
+                    }
+                    return errori;
+                }));
+            }
+            partenza.countDown();
+            for (Future<Integer> esito : esiti) {
+                assertEquals(0, esito.get(60, TimeUnit.SECONDS), "Risultati incoerenti con accessi concorrenti");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
 }
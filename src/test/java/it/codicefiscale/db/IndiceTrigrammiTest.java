@@ -0,0 +1,71 @@
+package it.codicefiscale.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceTrigrammiTest {
+
+    @Test
+    void normalizza_ShouldRimuovereAccentiPunteggiaturaEAbbreviazioni() {
+        assertEquals("SAN GIOVANNI ROTONDO", IndiceTrigrammi.normalizza("S. Giovanni  Rotondo"));
+        assertEquals("CANICATTI", IndiceTrigrammi.normalizza("Canicattì"));
+        assertEquals("CANICATTI", IndiceTrigrammi.normalizza("CANICATTI'"));
+        assertEquals("SANT ANGELO MUXARO", IndiceTrigrammi.normalizza("Sant'Angelo Muxaro"));
+        assertEquals("SANTA MARIA A VICO", IndiceTrigrammi.normalizza("S.ta Maria a Vico"));
+        assertArrayEquals(IndiceTrigrammi.trigrammi("ROMA"), IndiceTrigrammi.trigrammi(" roma "));
+        assertEquals(5, IndiceTrigrammi.trigrammi("ROMA").length);
+    }
+
+    @Test
+    void cerca_ShouldOrdinarePerSimilitudineNellaProvincia() throws SQLException {
+        IndiceTrigrammi indice;
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE comuni_nazioni (sigla_provincia TEXT, denominazione_ita TEXT, "
+                    + "codice_belfiore TEXT)");
+            stmt.execute("INSERT INTO comuni_nazioni VALUES "
+                    + "('FG', 'SAN GIOVANNI ROTONDO', 'H926'), "
+                    + "('FG', 'SAN MARCO IN LAMIS', 'H985'), "
+                    + "('AG', 'CANICATTI''', 'B602'), "
+                    + "('VI', 'SOVIZZO', 'I879'), "
+                    + "('VI', 'SOVIZZO', 'M436'), "
+                    + "('BB', 'COMUNE UNO', 'B001'), "
+                    + "('BB', 'COMUNE DUE', 'B002'), "
+                    + "('CC', 'SAN GIOVANNI ROTONDO', 'C001')");
+            indice = IndiceTrigrammi.carica(connection);
+        }
+
+        assertEquals(7, indice.dimensione());
+
+        List<IndiceTrigrammi.Corrispondenza> risultati = indice.cerca("FG", "S. Giovanni Rotondo", 5);
+        assertEquals(1, risultati.size());
+        assertEquals(new LuogoNascita("FG", "SAN GIOVANNI ROTONDO"), risultati.get(0).getLuogo());
+        assertEquals(1.0, risultati.get(0).getSimilitudine());
+
+        assertEquals(new LuogoNascita("AG", "CANICATTI'"), indice.cerca("AG", "Canicattì", 5).get(0).getLuogo());
+        assertTrue(indice.cerca("VI", "Sovizo", 5).get(0).getSimilitudine() < 1.0);
+        assertEquals(new LuogoNascita("VI", "SOVIZZO"), indice.cerca("VI", "Sovizo", 5).get(0).getLuogo());
+
+        // Senza provincia si cercano tutte, a parità di similitudine in ordine di provincia
+        risultati = indice.cerca(null, "San Giovanni Rotondo", 5);
+        assertEquals(2, risultati.size());
+        assertEquals("CC", risultati.get(0).getLuogo().getSiglaProvincia());
+        assertEquals("FG", risultati.get(1).getLuogo().getSiglaProvincia());
+        assertEquals(1, indice.cerca(null, "San Giovanni Rotondo", 1).size());
+
+        // Denominazioni ugualmente simili e denominazioni troppo diverse
+        risultati = indice.cerca("BB", "Comune", 5);
+        assertEquals(2, risultati.size());
+        assertEquals(risultati.get(0).getSimilitudine(), risultati.get(1).getSimilitudine());
+        assertTrue(indice.cerca("FG", "Foggia", 5).isEmpty());
+        assertTrue(indice.cerca("XX", "Sovizzo", 5).isEmpty());
+        assertTrue(indice.cerca("VI", "...", 5).isEmpty());
+    }
+}
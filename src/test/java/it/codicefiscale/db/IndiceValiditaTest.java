@@ -0,0 +1,48 @@
+package it.codicefiscale.db;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndiceValiditaTest {
+
+    @Test
+    void cerca_WithIntervalliSovrapposti_ShouldReturnCodiceValidoNellaData() throws SQLException {
+        IndiceValidita indice;
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:");
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE comuni_nazioni (sigla_provincia TEXT, denominazione_ita TEXT, "
+                    + "codice_belfiore TEXT, data_inizio_validita TEXT, data_fine_validita TEXT)");
+            stmt.execute("INSERT INTO comuni_nazioni VALUES "
+                    // Intervallo lungo che si sovrappone a uno più breve iniziato dopo
+                    + "('AA', 'COMUNE', 'A001', NULL, '31/12/1999'), "
+                    + "('AA', 'COMUNE', 'A002', '01/01/1950', '31/12/1960'), "
+                    + "('AA', 'COMUNE', 'A003', '01/01/2010', NULL), "
+                    // Stessa data di inizio: vale il codice maggiore
+                    + "('BB', 'ALTRO', 'B001', '01/01/2000', NULL), "
+                    + "('BB', 'ALTRO', 'B002', '01/01/2000', NULL)");
+            indice = IndiceValidita.carica(connection);
+        }
+
+        assertEquals(2, indice.dimensione());
+        assertEquals("A001", indice.cerca("AA|COMUNE", giorno(1900, 1, 1)));
+        assertEquals("A002", indice.cerca("AA|COMUNE", giorno(1955, 6, 1)));
+        assertEquals("A002", indice.cerca("AA|COMUNE", giorno(1960, 12, 31)), "La data di fine è inclusa");
+        assertEquals("A001", indice.cerca("AA|COMUNE", giorno(1961, 1, 1)));
+        assertNull(indice.cerca("AA|COMUNE", giorno(2005, 1, 1)), "Nessun codice valido tra il 2000 e il 2009");
+        assertEquals("A003", indice.cerca("AA|COMUNE", giorno(2020, 1, 1)));
+        assertEquals("B002", indice.cerca("BB|ALTRO", giorno(2020, 1, 1)));
+        assertNull(indice.cerca("BB|ALTRO", giorno(1999, 12, 31)));
+        assertNull(indice.cerca("CC|ASSENTE", giorno(2020, 1, 1)));
+    }
+
+    private static long giorno(int anno, int mese, int giorno) {
+        return LocalDate.of(anno, mese, giorno).toEpochDay();
+    }
+}
@@ -0,0 +1,78 @@
+package it.codicefiscale.metriche;
+
+import it.codicefiscale.CodiceFiscaleValidator;
+import it.codicefiscale.CodiceFiscaleValidator.Risultato.TipoErrore;
+import it.codicefiscale.db.DatabaseManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RaccoltaMetricheTest {
+
+    @AfterEach
+    void tearDown() {
+        Metriche.disabilita();
+    }
+
+    @Test
+    void istogramma_ShouldStimarePercentiliConErroreLimitato() {
+        IstogrammaLatenze istogramma = new IstogrammaLatenze();
+        for (long valore = 1; valore <= 1_000_000; valore++) {
+            istogramma.registra(valore);
+        }
+
+        IstogrammaLatenze.Istantanea istantanea = istogramma.istantanea();
+        assertEquals(1_000_000, istantanea.getConteggio());
+        assertEquals(500_000.5, istantanea.getMedia(), 0.001);
+        assertEquals(500_000, istantanea.getPercentile(50), 500_000 * 0.125);
+        assertEquals(990_000, istantanea.getPercentile(99), 990_000 * 0.125);
+        assertTrue(istantanea.getMassimo() >= 1_000_000);
+
+        // Ogni valore cade in un intervallo il cui limite superiore non è minore del valore stesso
+        for (long valore = 0; valore < 100_000; valore += 7) {
+            int indice = IstogrammaLatenze.indice(valore);
+            assertTrue(IstogrammaLatenze.limiteSuperiore(indice) >= valore);
+            assertTrue(indice == 0 || IstogrammaLatenze.limiteSuperiore(indice - 1) < valore);
+        }
+    }
+
+    @Test
+    void abilita_ShouldContareLeValidazioniEdEsporreLMBean() throws Exception {
+        DatabaseManager mockDbManager = mock(DatabaseManager.class);
+        when(mockDbManager.isCodiceBelfioreValido("H501")).thenReturn(true);
+        CodiceFiscaleValidator validator = new CodiceFiscaleValidator(mockDbManager);
+
+        // Con le metriche disabilitate non viene registrato nulla
+        validator.validaFormato("RSSMRA85M01H501Q");
+
+        RaccoltaMetriche raccolta = Metriche.abilita();
+        validator.validaFormato("RSSMRA85M01H501Q");
+        validator.validaFormato("RSSMRA85M01H501X");
+        validator.validaFormato("INVALID");
+        validator.valida("RSSMRA85M01H501Q", "Mario", "Rossi", null, 'M', "Roma", "RM");
+
+        assertEquals(1, raccolta.getConteggio(AscoltatoreMetriche.Operazione.VALIDA_FORMATO, TipoErrore.NESSUN_ERRORE));
+        assertEquals(1, raccolta.getConteggio(AscoltatoreMetriche.Operazione.VALIDA_FORMATO,
+                TipoErrore.CARATTERE_CONTROLLO_ERRATO));
+        assertEquals(1, raccolta.getConteggio(AscoltatoreMetriche.Operazione.VALIDA_FORMATO, TipoErrore.FORMATO_NON_VALIDO));
+        assertEquals(3, raccolta.getLatenze(AscoltatoreMetriche.Operazione.VALIDA_FORMATO).getConteggio());
+        assertEquals(1, raccolta.getLatenze(AscoltatoreMetriche.Operazione.VALIDA).getConteggio());
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName nome = new ObjectName(Metriche.NOME_MBEAN);
+        TabularData esiti = (TabularData) server.getAttribute(nome, "EsitiValidaFormato");
+        assertEquals(TipoErrore.values().length, esiti.size());
+
+        Metriche.disabilita();
+        assertFalse(server.isRegistered(nome));
+        validator.validaFormato("RSSMRA85M01H501Q");
+        assertEquals(3, raccolta.getLatenze(AscoltatoreMetriche.Operazione.VALIDA_FORMATO).getConteggio());
+    }
+}